@@ -0,0 +1,152 @@
+package com.tomasulo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Decodes the BinaryTraceWriter format from a ByteBuffer. Files are memory-mapped in fixed-size
+// windows, so inputs larger than 2 GB stream in constant memory.
+public class BinaryTraceReader implements InstructionSource {
+    private static final long WINDOW = 64L << 20;
+    private static final InstructionType[] TYPES = InstructionType.values();
+    private static final String[] REGISTERS = new String[255];
+    static {
+        for (int i = 0; i < 128; i++) REGISTERS[i] = "R" + i;
+        for (int i = 0; i < RegisterFile.FP_REGS; i++) REGISTERS[128 + i] = "F" + i;
+    }
+
+    private final FileChannel channel; // null when reading an in-memory buffer
+    private final long fileSize;
+    private long windowStart = 0;
+    private ByteBuffer buf;
+    private int lastAddress = 0;
+    private Instruction next = null;
+    private long consumed = 0;
+
+    public BinaryTraceReader(ByteBuffer data) throws IOException {
+        this.channel = null;
+        this.fileSize = data.remaining();
+        this.buf = data;
+        readHeader();
+    }
+
+    private BinaryTraceReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        map(0);
+        readHeader();
+    }
+
+    public static BinaryTraceReader open(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new BinaryTraceReader(ch);
+        } catch (IOException ex) {
+            ch.close();
+            throw ex;
+        }
+    }
+
+    // True if the file starts with the binary trace magic number
+    public static boolean isBinary(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(4);
+            return ch.read(b, 0) == 4 && b.getInt(0) == BinaryTraceWriter.MAGIC;
+        }
+    }
+
+    // Decode a whole binary program for TomasuloEngine.loadInstructions
+    public static List<Instruction> readProgram(Path path) throws IOException {
+        List<Instruction> out = new ArrayList<>();
+        try (BinaryTraceReader r = open(path)) {
+            for (Instruction ins; (ins = r.peek()) != null; r.advance()) out.add(ins);
+        }
+        return out;
+    }
+
+    public long getConsumed() { return consumed; }
+
+    @Override
+    public Instruction peek() {
+        if (next == null) {
+            try {
+                next = decode();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public void advance() {
+        if (peek() == null) return;
+        next = null;
+        consumed++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+
+    private void readHeader() throws IOException {
+        if (buf.remaining() < 5 || buf.getInt() != BinaryTraceWriter.MAGIC) throw new IOException("Not a binary trace");
+        int version = buf.get();
+        if (version != BinaryTraceWriter.VERSION) throw new IOException("Unsupported binary trace version " + version);
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, fileSize - position));
+    }
+
+    private Instruction decode() throws IOException {
+        // Slide the window forward before a record could straddle its end
+        if (channel != null && buf.remaining() < BinaryTraceWriter.MAX_RECORD
+                && windowStart + buf.limit() < fileSize) {
+            map(windowStart + buf.position());
+        }
+        if (!buf.hasRemaining()) return null;
+        long at = windowStart + buf.position();
+        try {
+            int op = buf.get() & 0xFF;
+            if (op >= TYPES.length) throw new IOException("Bad opcode " + op + " at offset " + at);
+            int flags = buf.get();
+            String dest = (flags & BinaryTraceWriter.F_DEST) != 0 ? register(buf.get()) : null;
+            String src1 = (flags & BinaryTraceWriter.F_SRC1) != 0 ? register(buf.get()) : null;
+            String src2 = (flags & BinaryTraceWriter.F_SRC2) != 0 ? register(buf.get()) : null;
+            Integer imm = (flags & BinaryTraceWriter.F_IMM) != 0 ? getVarint() : null;
+            Integer address = null;
+            if ((flags & BinaryTraceWriter.F_ADDR) != 0) {
+                lastAddress += getVarint();
+                address = lastAddress;
+            }
+            Boolean taken = (flags & BinaryTraceWriter.F_TAKEN) != 0 ? (flags & BinaryTraceWriter.F_TAKEN_VALUE) != 0 : null;
+            return new Instruction(TYPES[op], dest, src1, src2, imm, null, address, taken);
+        } catch (java.nio.BufferUnderflowException ex) {
+            throw new IOException("Truncated record at offset " + at);
+        }
+    }
+
+    private static String register(byte code) throws IOException {
+        int c = code & 0xFF;
+        if (c >= REGISTERS.length || REGISTERS[c] == null) throw new IOException("Bad register code " + c);
+        return REGISTERS[c];
+    }
+
+    private int getVarint() {
+        int z = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = buf.get();
+            z |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        return (z >>> 1) ^ -(z & 1);
+    }
+}
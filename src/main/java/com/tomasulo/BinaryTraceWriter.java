@@ -0,0 +1,145 @@
+package com.tomasulo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compact binary encoding of Instruction streams (static programs or dynamic traces).
+//
+// File:   int MAGIC, byte VERSION, then records until end of file
+// Record: byte opcode (InstructionType ordinal)
+//         byte flags (F_DEST | F_SRC1 | F_SRC2 | F_IMM | F_ADDR | F_TAKEN | F_TAKEN_VALUE)
+//         one byte per present register (R0-R127 = 0-127, F0-F31 = 128-159)
+//         zigzag varint immediate, zigzag varint delta from the previous record's address
+// Source text is not stored; decoded instructions print in canonical form.
+public class BinaryTraceWriter implements Closeable {
+    static final int MAGIC = 0x544D4254; // "TMBT"
+    static final int VERSION = 1;
+    static final int MAX_RECORD = 2 + 3 + 5 + 5;
+
+    static final int F_DEST = 1, F_SRC1 = 2, F_SRC2 = 4, F_IMM = 8, F_ADDR = 16, F_TAKEN = 32, F_TAKEN_VALUE = 64;
+
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+    private int lastAddress = 0;
+    private long count = 0;
+
+    public BinaryTraceWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buf.putInt(MAGIC);
+        buf.put((byte) VERSION);
+    }
+
+    public long getCount() { return count; }
+
+    public void write(Instruction ins) throws IOException {
+        if (buf.remaining() < MAX_RECORD) flush();
+        int flags = 0;
+        if (ins.dest != null) flags |= F_DEST;
+        if (ins.src1 != null) flags |= F_SRC1;
+        if (ins.src2 != null) flags |= F_SRC2;
+        if (ins.immediate != null) flags |= F_IMM;
+        if (ins.traceAddress != null) flags |= F_ADDR;
+        if (ins.traceTaken != null) flags |= ins.traceTaken ? F_TAKEN | F_TAKEN_VALUE : F_TAKEN;
+        buf.put((byte) ins.type.ordinal());
+        buf.put((byte) flags);
+        if (ins.dest != null) buf.put(registerCode(ins.dest));
+        if (ins.src1 != null) buf.put(registerCode(ins.src1));
+        if (ins.src2 != null) buf.put(registerCode(ins.src2));
+        if (ins.immediate != null) putVarint(buf, ins.immediate);
+        if (ins.traceAddress != null) {
+            putVarint(buf, ins.traceAddress - lastAddress);
+            lastAddress = ins.traceAddress;
+        }
+        count++;
+    }
+
+    private void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    static byte registerCode(String reg) {
+        int n = -1;
+        try {
+            n = Integer.parseInt(reg.substring(1));
+        } catch (RuntimeException ignored) {
+        }
+        char bank = reg.isEmpty() ? '?' : Character.toUpperCase(reg.charAt(0));
+        if (bank == 'R' && n >= 0 && n < 128) return (byte) n;
+        if (bank == 'F' && n >= 0 && n < RegisterFile.FP_REGS) return (byte) (128 + n);
+        throw new IllegalArgumentException("Register " + reg + " cannot be encoded");
+    }
+
+    private static void putVarint(ByteBuffer b, int v) {
+        int z = (v << 1) ^ (v >> 31); // zigzag: small negatives stay short
+        while ((z & ~0x7F) != 0) {
+            b.put((byte) ((z & 0x7F) | 0x80));
+            z >>>= 7;
+        }
+        b.put((byte) z);
+    }
+
+    // Assemble a text program (labels resolved) into a binary file; returns the parse errors
+    public static List<String> convertProgram(Path text, Path out) throws IOException {
+        List<String> errors = new ArrayList<>();
+        List<Instruction> program = InstructionParser.parseProgram(Files.readAllLines(text), errors);
+        try (BinaryTraceWriter w = new BinaryTraceWriter(out)) {
+            for (Instruction ins : program) w.write(ins);
+        }
+        return errors;
+    }
+
+    // Outcome of convertTrace; firstError is null when every line parsed
+    public static class Conversion {
+        public final long written;
+        public final long skipped;
+        public final String firstError;
+
+        Conversion(long written, long skipped, String firstError) {
+            this.written = written;
+            this.skipped = skipped;
+            this.firstError = firstError;
+        }
+    }
+
+    // Stream a text dynamic trace into a binary file in constant memory; unparsable lines are skipped
+    public static Conversion convertTrace(Path text, Path out) throws IOException {
+        try (TraceReader in = TraceReader.open(text); BinaryTraceWriter w = new BinaryTraceWriter(out)) {
+            for (Instruction ins; (ins = in.peek()) != null; in.advance()) w.write(ins);
+            return new Conversion(w.getCount(), in.getBadLines(), in.getFirstError());
+        }
+    }
+
+    // Usage: BinaryTraceWriter program|trace <input.txt> <output.tbin>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !(args[0].equals("program") || args[0].equals("trace"))) {
+            System.err.println("Usage: BinaryTraceWriter program|trace <input.txt> <output.tbin>");
+            System.exit(2);
+        }
+        Path in = Path.of(args[1]), out = Path.of(args[2]);
+        if (args[0].equals("program")) {
+            for (String err : convertProgram(in, out)) System.err.println(err);
+        } else {
+            Conversion c = convertTrace(in, out);
+            if (c.skipped > 0) System.err.println("Skipped " + c.skipped + " lines, first at " + c.firstError);
+            System.out.println(c.written + " instructions written to " + out);
+        }
+    }
+}
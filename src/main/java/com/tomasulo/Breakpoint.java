@@ -0,0 +1,48 @@
+package com.tomasulo;
+
+// Run-until condition checked by SimulationRunner after every cycle
+public interface Breakpoint {
+    boolean hit(TomasuloEngine engine);
+
+    // Called once before a run starts
+    default void arm(TomasuloEngine engine) {}
+
+    static Breakpoint atCycle(long cycle) {
+        return new Breakpoint() {
+            public boolean hit(TomasuloEngine e) { return e.cycle >= cycle; }
+            public String toString() { return "cycle " + cycle; }
+        };
+    }
+
+    // PC is the index of the next instruction to issue
+    static Breakpoint atPc(int pc) {
+        return new Breakpoint() {
+            public boolean hit(TomasuloEngine e) { return e.pc == pc; }
+            public String toString() { return "PC=" + pc; }
+        };
+    }
+
+    static Breakpoint registerEquals(String reg, double value) {
+        return new Breakpoint() {
+            public boolean hit(TomasuloEngine e) { return e.registers.getFp(reg) == value; }
+            public String toString() { return reg + "=" + value; }
+        };
+    }
+
+    static Breakpoint cacheMiss() {
+        return new Breakpoint() {
+            private int seen = 0;
+
+            public void arm(TomasuloEngine e) { seen = e.cache.getMisses(); }
+
+            public boolean hit(TomasuloEngine e) {
+                int misses = e.cache.getMisses();
+                boolean missed = misses > seen;
+                seen = misses;
+                return missed;
+            }
+
+            public String toString() { return "cache miss"; }
+        };
+    }
+}
@@ -0,0 +1,20 @@
+package com.tomasulo;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// State touched since the last TomasuloEngine.drainChanges() call, so views can patch only what moved
+public class ChangeSet {
+    public final Set<String> stations = new LinkedHashSet<>(); // station names
+    public final Set<String> registers = new HashSet<>(); // register names (value or tag changed)
+    public final BitSet cacheLines = new BitSet(); // cache line indices
+    public final Set<Integer> memoryWords = new HashSet<>(); // word-aligned addresses
+    public boolean queueChanged = false;
+
+    public boolean isEmpty() {
+        return stations.isEmpty() && registers.isEmpty() && cacheLines.isEmpty()
+                && memoryWords.isEmpty() && !queueChanged;
+    }
+}
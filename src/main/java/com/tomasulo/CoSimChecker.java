@@ -0,0 +1,131 @@
+package com.tomasulo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Lock-step co-simulation against ReferenceInterpreter. The reference executes each instruction
+// when the engine issues it, so it checks issue order (branch redirects). Each result is compared
+// when it is written back, and so is the register it lands in once no younger writer is in flight.
+// Only the first divergence is kept; checking stops after it.
+// Not compatible with SMT; fastForward() bypasses issue and refuses to run while it is attached.
+public class CoSimChecker implements EngineObserver {
+    private static class Expected {
+        final Instruction ins;
+        final Long value;
+        final Integer address;
+
+        Expected(Instruction ins, Long value, Integer address) {
+            this.ins = ins;
+            this.value = value;
+            this.address = address;
+        }
+    }
+
+    public final ReferenceInterpreter reference;
+    private final Map<Long, Expected> inFlight = new HashMap<>(); // by ReservationStation.seq
+    private String divergence = null;
+    private long checked = 0;
+
+    private CoSimChecker(ReferenceInterpreter reference) {
+        this.reference = reference;
+    }
+
+    // Start checking from the engine's current (drained) state
+    public static CoSimChecker attach(TomasuloEngine engine) {
+        if (engine.getThreadCount() > 1) throw new IllegalStateException("Co-simulation supports a single hardware thread");
+        for (List<ReservationStation> pool : Arrays.asList(engine.windowStations, engine.addStations,
+                engine.mulStations, engine.intStations, engine.loadBuffers)) {
+            for (ReservationStation rs : pool) {
+                if (rs.busy) throw new IllegalStateException("Attach before running or after drainPipeline()");
+            }
+        }
+        ReferenceInterpreter ref = new ReferenceInterpreter(engine.getOriginalProgram(),
+                engine.registers.toBits(), engine.cache.getMemory().copy());
+        ref.pc = (int) engine.getIssuedCount();
+        CoSimChecker c = new CoSimChecker(ref);
+        engine.setObserver(c);
+        return c;
+    }
+
+    public String getDivergence() { return divergence; }
+    public boolean hasDiverged() { return divergence != null; }
+    public long getChecked() { return checked; }
+
+    @Override
+    public void onIssue(TomasuloEngine engine, ReservationStation rs) {
+        if (divergence != null) return;
+        if (!engine.isTraceMode()) {
+            Instruction expected = reference.next();
+            if (expected != rs.inst) {
+                diverge(engine, rs, "issued out of program order; reference expects "
+                        + (expected == null ? "end of program" : expected + " at PC " + reference.pc));
+                return;
+            }
+        }
+        reference.execute(rs.inst);
+        inFlight.put(rs.seq, new Expected(rs.inst, reference.lastValue, reference.lastAddress));
+    }
+
+    @Override
+    public void onWriteback(TomasuloEngine engine, ReservationStation rs, long value) {
+        Expected e = inFlight.remove(rs.seq);
+        if (divergence != null || e == null) return;
+        checked++;
+        if (e.address != null && !e.address.equals(rs.address)) {
+            diverge(engine, rs, "address engine=" + rs.address + " reference=" + e.address);
+        } else if (e.value != null && e.value != value) {
+            String what = isBranch(rs.inst) ? "branch taken" : isStore(rs.inst) ? "stored value" : "result";
+            String reg = isBranch(rs.inst) ? null : isStore(rs.inst) ? rs.inst.src2 : rs.inst.dest;
+            diverge(engine, rs, what + " engine=" + RegisterFile.formatBits(reg, value)
+                    + " reference=" + RegisterFile.formatBits(reg, e.value));
+        } else if (rs.inst.dest != null && !isBranch(rs.inst) && !isStore(rs.inst)
+                && engine.registers.getTag(rs.inst.dest) == null
+                && engine.registers.getBits(rs.inst.dest) != reference.get(rs.inst.dest)) {
+            // No younger writer in flight, so the register must hold the in-order value
+            diverge(engine, rs, rs.inst.dest + " engine=" + engine.registers.format(rs.inst.dest)
+                    + " reference=" + RegisterFile.formatBits(rs.inst.dest, reference.get(rs.inst.dest)));
+        }
+    }
+
+    // Final architectural comparison once the engine is idle; returns the first divergence or null
+    public String finish(TomasuloEngine engine) {
+        if (divergence != null) return divergence;
+        for (Map.Entry<String, Long> r : engine.registers.toBits().entrySet()) {
+            long ref = reference.get(r.getKey());
+            if (r.getValue() != ref) {
+                return divergence = "Final state: " + r.getKey() + " engine=" + RegisterFile.formatBits(r.getKey(), r.getValue())
+                        + " reference=" + RegisterFile.formatBits(r.getKey(), ref);
+            }
+        }
+        MainMemory mem = engine.cache.getMemory();
+        TreeSet<Integer> words = new TreeSet<>();
+        for (int a : mem.nonZeroWordAddresses()) words.add(a);
+        for (int a : reference.memory.nonZeroWordAddresses()) words.add(a);
+        for (int a : words) {
+            if (mem.readWord(a) != reference.memory.readWord(a)) {
+                return divergence = "Final state: mem[" + a + "] engine=" + mem.readWord(a)
+                        + " reference=" + reference.memory.readWord(a);
+            }
+        }
+        return null;
+    }
+
+    private void diverge(TomasuloEngine engine, ReservationStation rs, String what) {
+        divergence = "Cycle " + engine.cycle + ", instruction #" + rs.seq + " (" + rs.inst + " in " + rs.name + "): " + what;
+        engine.history.add("CO-SIM DIVERGENCE: " + divergence);
+    }
+
+    private static boolean isBranch(Instruction ins) {
+        return ins.type == InstructionType.BEQ || ins.type == InstructionType.BNE;
+    }
+
+    private static boolean isStore(Instruction ins) {
+        switch (ins.type) {
+            case SD: case SW: case S_S: case S_D: case S_W: return true;
+            default: return false;
+        }
+    }
+}
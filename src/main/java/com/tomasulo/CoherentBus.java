@@ -0,0 +1,126 @@
+package com.tomasulo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Snooping MESI bus shared by the private L1 caches of a MulticoreSystem. While the cores step,
+// their caches only queue requests; endCycle() runs at the cycle barrier on a single thread, grants
+// the requests one at a time (round-robin over cores, rotating each cycle), snoops the other caches
+// and then applies the buffered stores to shared memory, so results never depend on thread timing.
+// Clean lines come from memory; a Modified line is flushed by its owner and supplied cache-to-cache.
+public class CoherentBus {
+    static final byte INVALID = 0, SHARED = 1, EXCLUSIVE = 2, MODIFIED = 3;
+    static final int BUS_RD = 0, BUS_RDX = 1, BUS_UPGR = 2;
+
+    static class Request {
+        final int core;
+        final int block;
+        final int kind;
+        ReservationStation waiter; // station whose miss penalty absorbs the bus delay; may be null
+
+        Request(int core, int block, int kind) {
+            this.core = core;
+            this.block = block;
+            this.kind = kind;
+        }
+    }
+
+    public final int latency;      // bus cycles per transaction
+    private final int missPenalty; // memory latency the cache already charged for a miss
+    private final List<MemoryCache> caches = new ArrayList<>();
+    private long busyUntil = 0;
+
+    // Coherence traffic
+    public long busReads = 0;
+    public long busReadExclusives = 0;
+    public long busUpgrades = 0;
+    public long invalidations = 0;
+    public long cacheToCache = 0;
+    public long writebacks = 0;     // Modified lines flushed on a snoop or an eviction
+    public long busBusyCycles = 0;
+    public long busWaitCycles = 0;  // cycles requests queued behind earlier transactions
+
+    public CoherentBus(int latency, int missPenalty) {
+        this.latency = latency;
+        this.missPenalty = missPenalty;
+    }
+
+    void attach(MemoryCache cache) {
+        cache.attach(this, caches.size());
+        caches.add(cache);
+    }
+
+    public void endCycle(long cycle) {
+        int n = caches.size();
+        int first = (int) (cycle % n);
+        for (int k = 0; k < n; k++) {
+            MemoryCache c = caches.get((first + k) % n);
+            for (Request r : c.requests) grant(r, cycle);
+            c.requests.clear();
+        }
+        for (MemoryCache c : caches) c.applyPendingWrites();
+    }
+
+    private void grant(Request r, long cycle) {
+        MemoryCache requester = caches.get(r.core);
+        byte have = requester.stateOf(r.block);
+        // An earlier request this cycle may already have brought the line in
+        if (r.kind == BUS_RD ? have != INVALID : have >= EXCLUSIVE) {
+            if (r.kind != BUS_RD) requester.setState(r.block, MODIFIED);
+            return;
+        }
+        // An upgrade whose Shared copy was invalidated meanwhile needs the data again
+        int kind = r.kind == BUS_UPGR && have == INVALID ? BUS_RDX : r.kind;
+
+        long start = Math.max(cycle, busyUntil);
+        long wait = start - cycle;
+        busyUntil = start + latency;
+        busBusyCycles += latency;
+        busWaitCycles += wait;
+        if (kind == BUS_RD) busReads++;
+        else if (kind == BUS_RDX) busReadExclusives++;
+        else busUpgrades++;
+
+        boolean shared = false, supplied = false;
+        for (MemoryCache c : caches) {
+            if (c == requester) continue;
+            byte s = c.stateOf(r.block);
+            if (s == INVALID) continue;
+            if (s == MODIFIED) {
+                writebacks++;
+                supplied = true;
+            }
+            if (kind == BUS_RD) {
+                c.setState(r.block, SHARED);
+                shared = true;
+            } else {
+                c.setState(r.block, INVALID);
+                invalidations++;
+            }
+        }
+        if (supplied && kind != BUS_UPGR) cacheToCache++;
+
+        byte evicted = requester.install(r.block, kind != BUS_RD ? MODIFIED : shared ? SHARED : EXCLUSIVE);
+        if (evicted == MODIFIED) {
+            writebacks++;
+            busyUntil += latency;
+            busBusyCycles += latency;
+        }
+
+        // The cache charged a plain miss or upgrade; add the queueing delay, and take a
+        // cache-to-cache transfer at bus speed instead of memory latency
+        long extra = wait;
+        if (supplied && kind != BUS_UPGR) extra += latency - missPenalty;
+        ReservationStation w = r.waiter;
+        if (extra != 0 && w != null && w.busy && w.cacheMissPenalty > 0) {
+            w.cacheMissPenalty = (int) Math.max(1, w.cacheMissPenalty + extra);
+        }
+    }
+
+    public String report() {
+        return String.format("Bus: BusRd=%d BusRdX=%d BusUpgr=%d invalidations=%d cache-to-cache=%d writebacks=%d%n"
+                        + "Bus busy %d cycles, requests waited %d cycles%n",
+                busReads, busReadExclusives, busUpgrades, invalidations, cacheToCache, writebacks,
+                busBusyCycles, busWaitCycles);
+    }
+}
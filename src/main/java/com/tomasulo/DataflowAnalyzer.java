@@ -0,0 +1,183 @@
+package com.tomasulo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dataflow limit of a dynamic instruction stream: each instruction finishes its
+// TomasuloEngine.estimateLatency after the last of its true (RAW) producers, through registers and
+// through memory (store to load, per 4-byte word). Resources, issue width and branches are unlimited
+// or perfect, and renaming removes WAR/WAW hazards, so the longest chain bounds any machine config.
+// One pass, amortized constant work per instruction: only the last writer of each register and memory
+// word is looked up. The critical path length is exact, but only its tail is kept: producer links
+// that finish more than PATH_CYCLES before the latest finish are cut from time to time, so memory
+// follows the register and memory footprint, not the stream length.
+public class DataflowAnalyzer {
+    static final long PATH_CYCLES = 1 << 16;      // kept tail of the critical path, in cycles
+    private static final int COMPACT_MIN = 1 << 16; // instructions between cuts, at least
+
+    private static final class Node {
+        final Instruction ins;
+        final long finish;
+        final long depth; // instructions on the chain ending here
+        Node pred;        // producer that determined the start, or null (none, or cut)
+        int mark;         // compaction pass that last visited this node
+
+        Node(Instruction ins, long finish, Node pred) {
+            this.ins = ins;
+            this.finish = finish;
+            this.depth = pred == null ? 1 : pred.depth + 1;
+            this.pred = pred;
+        }
+    }
+
+    public static class Result {
+        public final long instructions;
+        public final long cycles;                 // critical path length
+        public final long pathLength;             // instructions on the critical path
+        public final List<Instruction> path;      // tail of the critical path (at least PATH_CYCLES), oldest first
+        public final long[] pathFinish;           // finish cycle of each kept path instruction
+
+        Result(long instructions, long cycles, long pathLength, List<Instruction> path, long[] pathFinish) {
+            this.instructions = instructions;
+            this.cycles = cycles;
+            this.pathLength = pathLength;
+            this.path = path;
+            this.pathFinish = pathFinish;
+        }
+
+        // IPC with unlimited resources
+        public double idealIpc() {
+            return cycles == 0 ? 0 : (double) instructions / cycles;
+        }
+
+        // Kept path instructions grouped by their text, most frequent first, then up to maxListed of them
+        public String report(int maxListed) {
+            StringBuilder sb = new StringBuilder(toString()).append('\n');
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (Instruction ins : path) counts.merge(ins.toString(), 1, Integer::sum);
+            List<Map.Entry<String, Integer>> byCount = new ArrayList<>(counts.entrySet());
+            byCount.sort((a, b) -> b.getValue() - a.getValue()); // stable: ties keep path order
+            sb.append(String.format("Critical path by instruction (last %d of %d):%n", path.size(), pathLength));
+            for (Map.Entry<String, Integer> e : byCount) {
+                sb.append(String.format("  %8d  %s%n", e.getValue(), e.getKey()));
+            }
+            int n = Math.min(maxListed, path.size());
+            sb.append(String.format("Critical path (first %d of the last %d):%n", n, path.size()));
+            for (int i = 0; i < n; i++) {
+                sb.append(String.format("  done %8d  %s%n", pathFinish[i], path.get(i)));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Dataflow limit: %d instructions, critical path %d cycles (%d instructions), ideal IPC=%.3f",
+                    instructions, cycles, pathLength, idealIpc());
+        }
+    }
+
+    private final SimulatorConfig cfg;
+    private final Map<String, Node> registers = new HashMap<>(); // last writer of each register
+    private final Map<Integer, Node> memory = new HashMap<>();   // last store to each word (address / 4)
+    private Node last;     // latest finishing instruction so far
+    private long count = 0;
+    private long nextCompact = COMPACT_MIN;
+    private int pass = 0;
+    private long start;    // scratch for accept(): operands-ready cycle and the producer behind it
+    private Node pred;
+
+    public DataflowAnalyzer(SimulatorConfig cfg) {
+        this.cfg = cfg;
+    }
+
+    // Add the next dynamic instruction; address is the effective address of a load or store
+    // (null uses the instruction's trace address; without either, memory dependences are not tracked)
+    public void accept(Instruction ins, Integer address) {
+        // src1 is the base of a load or store and src2 the data of a store
+        start = 0;
+        pred = null;
+        if (ins.src1 != null) after(registers.get(ins.src1));
+        if (ins.src2 != null) after(registers.get(ins.src2));
+        if (address == null) address = ins.traceAddress;
+        boolean store = TomasuloEngine.isStore(ins);
+        int words = ins.type == InstructionType.L_D || ins.type == InstructionType.S_D ? 2 : 1;
+        if (TomasuloEngine.isLoad(ins) && address != null) {
+            for (int k = 0; k < words; k++) after(memory.get(Math.floorDiv(address, 4) + k));
+        }
+        Node n = new Node(ins, start + TomasuloEngine.estimateLatency(cfg, ins), pred);
+        if (store) {
+            if (address != null) {
+                for (int k = 0; k < words; k++) memory.put(Math.floorDiv(address, 4) + k, n);
+            }
+        } else if (ins.dest != null && !"R0".equals(ins.dest) && !TomasuloEngine.isBranch(ins)) {
+            registers.put(ins.dest, n);
+        }
+        if (last == null || n.finish > last.finish) last = n;
+        if (++count >= nextCompact) compact();
+    }
+
+    // Cut producer links that finish PATH_CYCLES or more before the latest finish. A later path can
+    // only run through nodes still reachable from the last writers, and each is visited once.
+    private void compact() {
+        long horizon = last.finish - PATH_CYCLES;
+        pass++;
+        cut(last, horizon);
+        for (Node n : registers.values()) cut(n, horizon);
+        for (Node n : memory.values()) cut(n, horizon);
+        // Wait for at least as many instructions as there are roots, so the walks stay amortized O(1)
+        nextCompact = count + Math.max(COMPACT_MIN, registers.size() + memory.size());
+    }
+
+    private void cut(Node n, long horizon) {
+        for (; n != null && n.mark != pass; n = n.pred) {
+            n.mark = pass;
+            if (n.pred != null && n.pred.finish <= horizon) n.pred = null;
+        }
+    }
+
+    private void after(Node producer) {
+        if (producer != null && producer.finish > start) {
+            start = producer.finish;
+            pred = producer;
+        }
+    }
+
+    public Result result() {
+        List<Instruction> path = new ArrayList<>();
+        for (Node n = last; n != null; n = n.pred) path.add(n.ins);
+        Collections.reverse(path);
+        long[] finish = new long[path.size()];
+        int i = finish.length;
+        for (Node n = last; n != null; n = n.pred) finish[--i] = n.finish;
+        return new Result(count, last == null ? 0 : last.finish, last == null ? 0 : last.depth, path, finish);
+    }
+
+    // Whole dynamic trace; the caller owns (and closes) the source
+    public static Result analyze(InstructionSource src, SimulatorConfig cfg) {
+        DataflowAnalyzer a = new DataflowAnalyzer(cfg);
+        for (Instruction ins = src.peek(); ins != null; ins = src.peek()) {
+            a.accept(ins, null);
+            src.advance();
+        }
+        return a.result();
+    }
+
+    // Static program from the given registers and memory (which it modifies), executed by
+    // ReferenceInterpreter for at most maxInstructions dynamic instructions
+    public static Result analyze(List<Instruction> program, Map<String, Long> regs, MainMemory memory,
+                                 SimulatorConfig cfg, long maxInstructions) {
+        DataflowAnalyzer a = new DataflowAnalyzer(cfg);
+        ReferenceInterpreter ref = new ReferenceInterpreter(program, regs, memory);
+        for (long i = 0; i < maxInstructions; i++) {
+            Instruction ins = ref.next();
+            if (ins == null) break;
+            ref.execute(ins);
+            a.accept(ins, ref.lastAddress);
+        }
+        return a.result();
+    }
+}
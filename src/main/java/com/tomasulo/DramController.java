@@ -0,0 +1,249 @@
+package com.tomasulo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Main-memory controller behind data cache misses (SimulatorConfig.dramChannels > 0).
+// Cache blocks are mapped row:bank:channel:column, so consecutive blocks share a row. Every bank keeps
+// its last row open: a request to the open row needs tCAS, to an idle bank tRCD + tCAS, and to another
+// row tRP + tRCD + tCAS. The block then holds the channel's data bus for dramBurstCycles, which caps
+// bandwidth. Each cycle every channel starts at most one request, chosen FR-FCFS among the first
+// dramQueueSize requests whose bank is free: the oldest row hit, otherwise the oldest request.
+// The waiting station's cacheMissPenalty stays at PENDING until its data arrives. Misses release the
+// load/store unit while they wait, so several can be outstanding; a miss to a block that is already
+// queued or in service joins that request (MSHR merge) instead of taking a queue slot.
+public class DramController {
+    public static final int PENDING = Integer.MAX_VALUE;
+
+    static class Request {
+        final int address;
+        final int channel, bank, row;
+        final long arrival;
+        final List<ReservationStation> waiters = new ArrayList<>();
+        long done = -1; // cycle the data arrives, once scheduled
+
+        Request(int address, int channel, int bank, int row, long arrival) {
+            this.address = address;
+            this.channel = channel;
+            this.bank = bank;
+            this.row = row;
+            this.arrival = arrival;
+        }
+    }
+
+    private final int channels, banks, blockSize, rowBlocks;
+    private final int tRCD, tCAS, tRP, burst, queueSize;
+    private final List<Request> queue = new ArrayList<>();     // waiting, in arrival order
+    private final List<Request> inService = new ArrayList<>();
+    private final int[] openRow;   // [channel * banks + bank], -1 = closed
+    private final long[] bankFree; // first cycle the bank accepts a new request
+    private final long[] busFree;  // first cycle each channel's data bus is free
+    private long now = 0;
+
+    public long requests = 0;
+    public long rowHits = 0;
+    public long rowEmpty = 0;      // bank had no open row
+    public long rowConflicts = 0;  // another row had to be closed first
+    public long totalLatency = 0;  // arrival to data, summed over completed requests
+    public long completed = 0;
+    public long busBusyCycles = 0;
+    public long queueFullCycles = 0; // cycles with more requests waiting than the queue holds
+    public long merged = 0;          // misses that joined a request for the same block
+    public int peakInFlight = 0;     // most requests queued or in service at once
+
+    public DramController(SimulatorConfig cfg) {
+        if (cfg.dramChannels <= 0 || cfg.dramBanks <= 0 || cfg.dramRowBytes < cfg.blockSizeBytes) {
+            throw new IllegalArgumentException("Bad DRAM geometry: " + cfg.dramChannels + " channels, "
+                    + cfg.dramBanks + " banks, " + cfg.dramRowBytes + " B rows");
+        }
+        channels = cfg.dramChannels;
+        banks = cfg.dramBanks;
+        blockSize = cfg.blockSizeBytes;
+        rowBlocks = cfg.dramRowBytes / cfg.blockSizeBytes;
+        tRCD = cfg.dramTRCD;
+        tCAS = cfg.dramTCAS;
+        tRP = cfg.dramTRP;
+        burst = Math.max(1, cfg.dramBurstCycles);
+        queueSize = Math.max(1, cfg.dramQueueSize);
+        openRow = new int[channels * banks];
+        Arrays.fill(openRow, -1);
+        bankFree = new long[channels * banks];
+        busFree = new long[channels];
+    }
+
+    // Queue a block fill for address on behalf of waiter (may be null), or join an outstanding one
+    public void enqueue(int address, ReservationStation waiter) {
+        int block = Math.floorDiv(address, blockSize);
+        Request r = find(queue, block);
+        if (r == null) r = find(inService, block);
+        if (r != null) {
+            if (waiter != null) r.waiters.add(waiter);
+            merged++;
+            return;
+        }
+        int rest = Math.floorDiv(block, rowBlocks);
+        int channel = Math.floorMod(rest, channels);
+        int bank = Math.floorMod(Math.floorDiv(rest, channels), banks);
+        int row = Math.floorDiv(rest, channels * banks);
+        r = new Request(address, channel, bank, row, now);
+        if (waiter != null) r.waiters.add(waiter);
+        queue.add(r);
+        requests++;
+        peakInFlight = Math.max(peakInFlight, inFlight());
+    }
+
+    private Request find(List<Request> list, int block) {
+        for (Request r : list) {
+            if (Math.floorDiv(r.address, blockSize) == block) return r;
+        }
+        return null;
+    }
+
+    public int inFlight() {
+        return queue.size() + inService.size();
+    }
+
+    // Deliver data due by this cycle, then let every channel start one request
+    public void tick(long cycle) {
+        now = cycle;
+        for (Iterator<Request> it = inService.iterator(); it.hasNext(); ) {
+            Request r = it.next();
+            if (r.done > cycle) continue;
+            it.remove();
+            completed++;
+            totalLatency += r.done - r.arrival;
+            for (ReservationStation w : r.waiters) {
+                if (w.busy && w.cacheMissPenalty > 0) w.cacheMissPenalty = 1; // reaches 0 this cycle
+            }
+        }
+        if (queue.size() > queueSize) queueFullCycles++;
+        for (int ch = 0; ch < channels; ch++) {
+            Request pick = null;
+            int limit = Math.min(queue.size(), queueSize);
+            for (int i = 0; i < limit; i++) {
+                Request r = queue.get(i);
+                int b = r.channel * banks + r.bank;
+                if (r.channel != ch || bankFree[b] > cycle) continue;
+                if (openRow[b] == r.row) {
+                    pick = r;
+                    break;
+                }
+                if (pick == null) pick = r;
+            }
+            if (pick != null) start(pick, cycle);
+        }
+    }
+
+    private void start(Request r, long cycle) {
+        queue.remove(r);
+        int b = r.channel * banks + r.bank;
+        int activate;
+        if (openRow[b] == r.row) {
+            activate = 0;
+            rowHits++;
+        } else if (openRow[b] < 0) {
+            activate = tRCD;
+            rowEmpty++;
+        } else {
+            activate = tRP + tRCD;
+            rowConflicts++;
+        }
+        openRow[b] = r.row;
+        long transfer = Math.max(cycle + activate + tCAS, busFree[r.channel]);
+        r.done = transfer + burst;
+        busFree[r.channel] = r.done;
+        busBusyCycles += burst;
+        bankFree[b] = cycle + activate + burst;
+        inService.add(r);
+    }
+
+    public String report() {
+        double avg = completed == 0 ? 0.0 : (double) totalLatency / completed;
+        return String.format("DRAM: requests=%d row hits=%d empty=%d conflicts=%d, average latency=%.1f cycles, "
+                        + "data bus busy=%d cycles, queue full=%d cycles, merged misses=%d, peak in flight=%d%n",
+                requests, rowHits, rowEmpty, rowConflicts, avg, busBusyCycles, queueFullCycles, merged, peakInFlight);
+    }
+
+    // Checkpoint support; waiters are saved by station name
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(channels);
+        out.writeInt(banks);
+        out.writeLong(now);
+        for (long v : new long[] {requests, rowHits, rowEmpty, rowConflicts, totalLatency, completed,
+                busBusyCycles, queueFullCycles, merged}) {
+            out.writeLong(v);
+        }
+        out.writeInt(peakInFlight);
+        for (int i = 0; i < openRow.length; i++) {
+            out.writeInt(openRow[i]);
+            out.writeLong(bankFree[i]);
+        }
+        for (long v : busFree) out.writeLong(v);
+        writeRequests(out, queue);
+        writeRequests(out, inService);
+    }
+
+    void readState(DataInputStream in, Map<String, ReservationStation> stations) throws IOException {
+        int c = in.readInt(), b = in.readInt();
+        if (c != channels || b != banks) {
+            throw new IOException("Checkpoint DRAM has " + c + " channels x " + b + " banks, config has "
+                    + channels + " x " + banks);
+        }
+        now = in.readLong();
+        requests = in.readLong();
+        rowHits = in.readLong();
+        rowEmpty = in.readLong();
+        rowConflicts = in.readLong();
+        totalLatency = in.readLong();
+        completed = in.readLong();
+        busBusyCycles = in.readLong();
+        queueFullCycles = in.readLong();
+        merged = in.readLong();
+        peakInFlight = in.readInt();
+        for (int i = 0; i < openRow.length; i++) {
+            openRow[i] = in.readInt();
+            bankFree[i] = in.readLong();
+        }
+        for (int i = 0; i < busFree.length; i++) busFree[i] = in.readLong();
+        readRequests(in, queue, stations);
+        readRequests(in, inService, stations);
+    }
+
+    private static void writeRequests(DataOutputStream out, List<Request> list) throws IOException {
+        out.writeInt(list.size());
+        for (Request r : list) {
+            out.writeInt(r.address);
+            out.writeInt(r.channel);
+            out.writeInt(r.bank);
+            out.writeInt(r.row);
+            out.writeLong(r.arrival);
+            out.writeLong(r.done);
+            out.writeInt(r.waiters.size());
+            for (ReservationStation w : r.waiters) out.writeUTF(w.name);
+        }
+    }
+
+    private static void readRequests(DataInputStream in, List<Request> list,
+                                     Map<String, ReservationStation> stations) throws IOException {
+        list.clear();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            int address = in.readInt(), channel = in.readInt(), bank = in.readInt(), row = in.readInt();
+            long arrival = in.readLong(), done = in.readLong();
+            Request r = new Request(address, channel, bank, row, arrival);
+            r.done = done;
+            int waiters = in.readInt();
+            for (int w = 0; w < waiters; w++) {
+                ReservationStation waiter = stations.get(in.readUTF());
+                if (waiter != null) r.waiters.add(waiter);
+            }
+            list.add(r);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.tomasulo;
+
+import java.io.*;
+import java.util.*;
+
+// Binary checkpoint of the complete engine state (program, queue, stations, registers, cache, memory,
+// counters and pipeline trace) with a single hardware thread.
+// A checkpoint can be restored under a different SimulatorConfig as long as the station counts and
+// cache geometry match, so a warmed-up prefix can be forked into many latency variants.
+// The textual history log is not part of the checkpoint. A trace-driven engine records how many trace
+// instructions it has issued; after restoring, reattach the trace with
+// engine.resumeTrace(TraceReader.open(path).skip(engine.getTraceConsumed())).
+public class EngineCheckpoint {
+    private static final int MAGIC = 0x544D4350; // "TMCP"
+    private static final int VERSION = 20;
+
+    public static void save(TomasuloEngine engine, OutputStream os) throws IOException {
+        if (engine.getThreadCount() > 1) throw new IOException("SMT engines cannot be checkpointed");
+        // MESI states and pending bus traffic belong to the whole system, not to one core
+        if (engine.cache.hasBus()) throw new IOException("Multicore cores cannot be checkpointed");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(engine.cycle);
+        out.writeInt(engine.pc);
+        out.writeLong(engine.getIssuedCount());
+        out.writeBoolean(engine.isTraceMode());
+        out.writeLong(engine.getTraceConsumed());
+
+        // Program table; queue and station entries refer to it by index
+        List<Instruction> program = engine.getOriginalProgram();
+        Map<Instruction, Integer> index = new IdentityHashMap<>();
+        out.writeInt(program.size());
+        for (int i = 0; i < program.size(); i++) {
+            index.put(program.get(i), i);
+            writeInstruction(out, program.get(i));
+        }
+        out.writeInt(engine.instrQueue.size());
+        for (Instruction ins : engine.instrQueue) writeInstructionRef(out, ins, index);
+
+        out.writeInt(engine.decodeQueue.size());
+        for (Instruction ins : engine.decodeQueue) writeInstructionRef(out, ins, index);
+        out.writeBoolean(engine.icache != null);
+        if (engine.icache != null) {
+            out.writeInt(engine.getFetchStall());
+            out.writeInt(engine.getLoopStart());
+            out.writeInt(engine.getLoopEnd());
+            engine.icache.writeState(out);
+        }
+
+        writeStations(out, engine.windowStations, index);
+        out.writeLong(engine.getSelectRng());
+        writeUnits(out, engine.getMulFree());
+        writeUnits(out, engine.getDivFree());
+        writeStations(out, engine.addStations, index);
+        writeStations(out, engine.mulStations, index);
+        writeStations(out, engine.intStations, index);
+        writeStations(out, engine.loadBuffers, index);
+
+        out.writeInt(engine.registers.regs.size());
+        for (Map.Entry<String, Integer> e : engine.registers.regs.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue());
+        }
+        for (long v : engine.registers.fp) out.writeLong(v);
+        out.writeInt(engine.registers.tag.size());
+        for (Map.Entry<String, String> e : engine.registers.tag.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeUTF(e.getValue());
+        }
+        out.writeBoolean(engine.physRegFile != null);
+        if (engine.physRegFile != null) engine.physRegFile.writeState(out);
+
+        engine.cache.writeState(out);
+        DramController dram = engine.cache.getDram();
+        out.writeBoolean(dram != null);
+        if (dram != null) dram.writeState(out);
+        out.writeBoolean(engine.tlb != null);
+        if (engine.tlb != null) engine.tlb.writeState(out);
+        engine.counters.writeState(out);
+        engine.trace.writeState(out);
+        out.flush();
+    }
+
+    public static TomasuloEngine restore(InputStream is, SimulatorConfig cfg) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        if (in.readInt() != MAGIC) throw new IOException("Not an engine checkpoint");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported checkpoint version " + version);
+
+        TomasuloEngine engine = new TomasuloEngine(cfg);
+        long cycle = in.readLong();
+        int pc = in.readInt();
+        long issuedCount = in.readLong();
+        boolean traceMode = in.readBoolean();
+        long traceConsumed = in.readLong();
+
+        int n = in.readInt();
+        List<Instruction> program = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) program.add(readInstruction(in));
+        engine.loadInstructions(program);
+        engine.cycle = cycle;
+        engine.pc = pc;
+        engine.setIssuedCount(issuedCount);
+        engine.setTraceState(traceMode, traceConsumed);
+
+        engine.instrQueue.clear();
+        int q = in.readInt();
+        for (int i = 0; i < q; i++) engine.instrQueue.add(readInstructionRef(in, program));
+
+        engine.decodeQueue.clear();
+        int dq = in.readInt();
+        for (int i = 0; i < dq; i++) engine.decodeQueue.add(readInstructionRef(in, program));
+        boolean frontEnd = in.readBoolean();
+        if (frontEnd != (engine.icache != null)) {
+            throw new IOException("Checkpoint " + (frontEnd ? "has" : "does not have")
+                    + " a fetch front end, config " + (frontEnd ? "does not" : "does"));
+        }
+        if (frontEnd) {
+            engine.setFetchStall(in.readInt());
+            int loopStart = in.readInt();
+            engine.setLoopBuffer(loopStart, in.readInt());
+            engine.icache.readState(in);
+        }
+
+        readStations(in, engine.windowStations, program, "issue window");
+        engine.setSelectRng(in.readLong());
+        readUnits(in, engine.getMulFree(), "multipliers");
+        readUnits(in, engine.getDivFree(), "dividers");
+        readStations(in, engine.addStations, program, "Add");
+        readStations(in, engine.mulStations, program, "Mul");
+        readStations(in, engine.intStations, program, "Int");
+        readStations(in, engine.loadBuffers, program, "Load");
+
+        engine.registers.regs.clear();
+        int r = in.readInt();
+        for (int i = 0; i < r; i++) engine.registers.regs.put(in.readUTF(), in.readInt());
+        for (int i = 0; i < RegisterFile.FP_REGS; i++) engine.registers.fp[i] = in.readLong();
+        engine.registers.tag.clear();
+        int t = in.readInt();
+        for (int i = 0; i < t; i++) engine.registers.tag.put(in.readUTF(), in.readUTF());
+        boolean physical = in.readBoolean();
+        if (physical != (engine.physRegFile != null)) {
+            throw new IOException("Checkpoint " + (physical ? "uses" : "does not use")
+                    + " physical register renaming, config " + (physical ? "does not" : "does"));
+        }
+        if (physical) engine.physRegFile.readState(in);
+
+        engine.cache.readState(in);
+        boolean hasDram = in.readBoolean();
+        if (hasDram != (engine.cache.getDram() != null)) {
+            throw new IOException("Checkpoint " + (hasDram ? "has" : "does not have")
+                    + " a DRAM model, config " + (hasDram ? "does not" : "does"));
+        }
+        if (hasDram) {
+            Map<String, ReservationStation> stations = new HashMap<>();
+            for (List<ReservationStation> pool : Arrays.asList(engine.windowStations, engine.addStations,
+                    engine.mulStations, engine.intStations, engine.loadBuffers)) {
+                for (ReservationStation rs : pool) stations.put(rs.name, rs);
+            }
+            engine.cache.getDram().readState(in, stations);
+        }
+        boolean hasTlb = in.readBoolean();
+        if (hasTlb != (engine.tlb != null)) {
+            throw new IOException("Checkpoint " + (hasTlb ? "has" : "does not have")
+                    + " a data TLB, config " + (hasTlb ? "does not" : "does"));
+        }
+        if (hasTlb) engine.tlb.readState(in);
+        engine.counters.readState(in);
+        engine.trace.readState(in);
+        engine.history.add("Restored checkpoint at cycle " + cycle);
+        return engine;
+    }
+
+    public static byte[] toBytes(TomasuloEngine engine) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            save(engine, bos);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bos.toByteArray();
+    }
+
+    // Fork a new engine from an in-memory checkpoint, possibly with different latencies
+    public static TomasuloEngine fork(byte[] checkpoint, SimulatorConfig cfg) throws IOException {
+        return restore(new ByteArrayInputStream(checkpoint), cfg);
+    }
+
+    public static void saveToFile(TomasuloEngine engine, File f) throws IOException {
+        try (OutputStream os = new FileOutputStream(f)) {
+            save(engine, os);
+        }
+    }
+
+    public static TomasuloEngine restoreFromFile(File f, SimulatorConfig cfg) throws IOException {
+        try (InputStream is = new FileInputStream(f)) {
+            return restore(is, cfg);
+        }
+    }
+
+    private static void writeStations(DataOutputStream out, List<ReservationStation> pool,
+                                      Map<Instruction, Integer> index) throws IOException {
+        out.writeInt(pool.size());
+        for (ReservationStation rs : pool) {
+            out.writeBoolean(rs.busy);
+            if (!rs.busy) continue;
+            writeInstructionRef(out, rs.inst, index);
+            writeNullableString(out, rs.qj);
+            writeNullableString(out, rs.qk);
+            writeNullableLong(out, rs.vj);
+            writeNullableLong(out, rs.vk);
+            out.writeInt(rs.remaining);
+            out.writeBoolean(rs.executing);
+            out.writeBoolean(rs.writebackPending);
+            out.writeBoolean(rs.justIssued);
+            writeNullableInt(out, rs.address);
+            out.writeBoolean(rs.addressReady);
+            out.writeInt(rs.cacheMissPenalty);
+            out.writeBoolean(rs.cacheBlockLoaded);
+            out.writeInt(rs.tlbWalk);
+            out.writeLong(rs.traceId);
+            out.writeLong(rs.seq);
+            out.writeInt(rs.physDest);
+            out.writeInt(rs.prevPhys);
+        }
+    }
+
+    private static void writeUnits(DataOutputStream out, long[] unitFree) throws IOException {
+        out.writeInt(unitFree.length);
+        for (long v : unitFree) out.writeLong(v);
+    }
+
+    private static void readUnits(DataInputStream in, long[] unitFree, String kind) throws IOException {
+        int n = in.readInt();
+        if (n != unitFree.length) {
+            throw new IOException("Checkpoint has " + n + " modelled " + kind + ", config has " + unitFree.length);
+        }
+        for (int i = 0; i < n; i++) unitFree[i] = in.readLong();
+    }
+
+    private static void readStations(DataInputStream in, List<ReservationStation> pool,
+                                     List<Instruction> program, String kind) throws IOException {
+        int n = in.readInt();
+        if (n != pool.size()) {
+            throw new IOException("Checkpoint has " + n + " " + kind + " stations, config has " + pool.size());
+        }
+        for (ReservationStation rs : pool) {
+            rs.clear();
+            rs.busy = in.readBoolean();
+            if (!rs.busy) continue;
+            rs.inst = readInstructionRef(in, program);
+            rs.qj = readNullableString(in);
+            rs.qk = readNullableString(in);
+            rs.vj = readNullableLong(in);
+            rs.vk = readNullableLong(in);
+            rs.remaining = in.readInt();
+            rs.executing = in.readBoolean();
+            rs.writebackPending = in.readBoolean();
+            rs.justIssued = in.readBoolean();
+            rs.address = readNullableInt(in);
+            rs.addressReady = in.readBoolean();
+            rs.cacheMissPenalty = in.readInt();
+            rs.cacheBlockLoaded = in.readBoolean();
+            rs.tlbWalk = in.readInt();
+            rs.traceId = in.readLong();
+            rs.seq = in.readLong();
+            rs.physDest = in.readInt();
+            rs.prevPhys = in.readInt();
+        }
+    }
+
+    // Instructions outside the program table (e.g. injected by hand) are written inline
+    private static void writeInstructionRef(DataOutputStream out, Instruction ins,
+                                            Map<Instruction, Integer> index) throws IOException {
+        Integer i = index.get(ins);
+        if (i != null) {
+            out.writeInt(i);
+        } else {
+            out.writeInt(-1);
+            writeInstruction(out, ins);
+        }
+    }
+
+    private static Instruction readInstructionRef(DataInputStream in, List<Instruction> program) throws IOException {
+        int i = in.readInt();
+        if (i < 0) return readInstruction(in);
+        if (i >= program.size()) throw new IOException("Bad instruction index " + i);
+        return program.get(i);
+    }
+
+    private static void writeInstruction(DataOutputStream out, Instruction ins) throws IOException {
+        out.writeByte(ins.type.ordinal());
+        writeNullableString(out, ins.dest);
+        writeNullableString(out, ins.src1);
+        writeNullableString(out, ins.src2);
+        writeNullableInt(out, ins.immediate);
+        writeNullableString(out, ins.raw);
+        writeNullableInt(out, ins.traceAddress);
+        out.writeByte(ins.traceTaken == null ? -1 : ins.traceTaken ? 1 : 0);
+    }
+
+    private static Instruction readInstruction(DataInputStream in) throws IOException {
+        int op = in.readUnsignedByte();
+        InstructionType[] types = InstructionType.values();
+        if (op >= types.length) throw new IOException("Bad opcode " + op);
+        String dest = readNullableString(in);
+        String src1 = readNullableString(in);
+        String src2 = readNullableString(in);
+        Integer imm = readNullableInt(in);
+        String raw = readNullableString(in);
+        Integer address = readNullableInt(in);
+        byte taken = in.readByte();
+        return new Instruction(types[op], dest, src1, src2, imm, raw, address, taken < 0 ? null : taken == 1);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableInt(DataOutputStream out, Integer v) throws IOException {
+        out.writeBoolean(v != null);
+        if (v != null) out.writeInt(v);
+    }
+
+    private static Integer readNullableInt(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeNullableLong(DataOutputStream out, Long v) throws IOException {
+        out.writeBoolean(v != null);
+        if (v != null) out.writeLong(v);
+    }
+
+    private static Long readNullableLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+}
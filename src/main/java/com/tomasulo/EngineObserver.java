@@ -0,0 +1,11 @@
+package com.tomasulo;
+
+// Callbacks from inside TomasuloEngine.step(), on the simulation thread; keep them cheap.
+public interface EngineObserver {
+    // rs holds the newly issued instruction (rs.seq is its dynamic sequence number)
+    void onIssue(TomasuloEngine engine, ReservationStation rs);
+
+    // Called before rs is cleared. value is the result written to rs.inst.dest or the value stored
+    // at rs.address, as raw register bits (see RegisterFile.getBits), or 1/0 for a taken/not-taken branch.
+    void onWriteback(TomasuloEngine engine, ReservationStation rs, long value);
+}
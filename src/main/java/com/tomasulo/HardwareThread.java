@@ -0,0 +1,38 @@
+package com.tomasulo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Program, fetch position and architectural registers of one extra SMT hardware thread
+// (SimulatorConfig.smtThreads > 1). Thread 0 is the engine's own instrQueue, pc and registers.
+// All threads share the stations, functional units, CDB and data cache.
+public class HardwareThread {
+    public final int id;
+    public final InstructionQueue instrQueue = new InstructionQueue();
+    public final RegisterFile registers = new RegisterFile();
+    public int pc = 0; // index of the next instruction to issue
+    int issuedCount = 0;
+    final List<Instruction> originalProgram = new ArrayList<>();
+
+    HardwareThread(int id) {
+        this.id = id;
+    }
+
+    void loadInstructions(List<Instruction> ins) {
+        instrQueue.clear();
+        originalProgram.clear();
+        originalProgram.addAll(ins);
+        instrQueue.reload(originalProgram, 0);
+        pc = 0;
+        issuedCount = 0;
+    }
+
+    // Taken branch: reload the queue from targetPC; false if the target is outside the program
+    boolean redirect(int targetPC) {
+        if (targetPC < 0 || targetPC >= originalProgram.size()) return false;
+        instrQueue.reload(originalProgram, targetPC);
+        issuedCount = targetPC;
+        pc = targetPC;
+        return true;
+    }
+}
@@ -7,14 +7,28 @@ public class Instruction {
     public final String src2;
     public final Integer immediate; // for loads/stores/branches
     public final String raw; // original textual
+    // Dynamic trace annotations (null when running a static program)
+    public final Integer traceAddress; // effective address of a load/store
+    public final Boolean traceTaken;   // outcome of a branch
 
     public Instruction(InstructionType type, String dest, String src1, String src2, Integer immediate, String raw) {
+        this(type, dest, src1, src2, immediate, raw, null, null);
+    }
+
+    public Instruction(InstructionType type, String dest, String src1, String src2, Integer immediate, String raw,
+                       Integer traceAddress, Boolean traceTaken) {
         this.type = type;
         this.dest = dest;
         this.src1 = src1;
         this.src2 = src2;
         this.immediate = immediate;
         this.raw = raw;
+        this.traceAddress = traceAddress;
+        this.traceTaken = traceTaken;
+    }
+
+    public Instruction withTrace(Integer address, Boolean taken) {
+        return new Instruction(type, dest, src1, src2, immediate, raw, address, taken);
     }
 
     public static Instruction nop() {
@@ -23,6 +37,6 @@ public class Instruction {
 
     @Override
     public String toString() {
-        return raw == null ? type.name() : raw;
+        return raw == null ? InstructionParser.format(this) : raw;
     }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.tomasulo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Set-associative instruction cache with LRU replacement for the fetch stage. Only tags are
+// modelled: instructions themselves come from the program, at address = static index * 4.
+public class InstructionCache {
+    public static final int INSTRUCTION_BYTES = 4;
+
+    private final int sets;
+    private final int ways;
+    private final int blockSizeBytes;
+    private final int[] tags;      // [set * ways + way], -1 = invalid
+    private final long[] lastUse;  // LRU timestamps, same layout
+    private long accesses = 0;
+
+    public InstructionCache(int sizeBytes, int blockSizeBytes, int ways) {
+        if (blockSizeBytes <= 0 || ways <= 0 || sizeBytes < blockSizeBytes * ways) {
+            throw new IllegalArgumentException("Bad I-cache geometry: " + sizeBytes + " B, "
+                    + blockSizeBytes + " B blocks, " + ways + " ways");
+        }
+        this.blockSizeBytes = blockSizeBytes;
+        this.ways = ways;
+        this.sets = sizeBytes / (blockSizeBytes * ways);
+        tags = new int[sets * ways];
+        lastUse = new long[sets * ways];
+        Arrays.fill(tags, -1);
+    }
+
+    public int blockOf(int address) {
+        return Math.floorDiv(address, blockSizeBytes);
+    }
+
+    // Look up the block holding address; a miss fills it, replacing the least recently used way
+    public boolean access(int address) {
+        int block = blockOf(address);
+        int base = Math.floorMod(block, sets) * ways;
+        accesses++;
+        int victim = base;
+        for (int i = base; i < base + ways; i++) {
+            if (tags[i] == block) {
+                lastUse[i] = accesses;
+                return true;
+            }
+            if (lastUse[i] < lastUse[victim]) victim = i;
+        }
+        tags[victim] = block;
+        lastUse[victim] = accesses;
+        return false;
+    }
+
+    // Checkpoint support
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(sets);
+        out.writeInt(ways);
+        out.writeInt(blockSizeBytes);
+        out.writeLong(accesses);
+        for (int i = 0; i < tags.length; i++) {
+            out.writeInt(tags[i]);
+            out.writeLong(lastUse[i]);
+        }
+    }
+
+    void readState(DataInputStream in) throws IOException {
+        int s = in.readInt(), w = in.readInt(), b = in.readInt();
+        if (s != sets || w != ways || b != blockSizeBytes) {
+            throw new IOException("Checkpoint I-cache geometry (" + s + " sets x " + w + " ways x " + b
+                    + " B) does not match config (" + sets + " sets x " + ways + " ways x " + blockSizeBytes + " B)");
+        }
+        accesses = in.readLong();
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = in.readInt();
+            lastUse[i] = in.readLong();
+        }
+    }
+}
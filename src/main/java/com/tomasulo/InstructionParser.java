@@ -0,0 +1,200 @@
+package com.tomasulo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Assembly text -> Instruction. Shared by the file loader and the trace reader.
+public class InstructionParser {
+
+    // Programs at least this long are parsed in parallel chunks
+    static final int PARALLEL_THRESHOLD = 20_000;
+    private static final int CHUNK_LINES = 8_192;
+
+    // Two passes: a sequential label scan, then parsing with label resolution (in parallel chunks for
+    // large inputs). Lines that fail to parse are skipped and described in errors, in source order.
+    public static List<Instruction> parseProgram(List<String> source, List<String> errors) {
+        // First pass: source line of every instruction, and label -> instruction index
+        int[] lineOf = new int[source.size()];
+        int n = 0;
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < source.size(); i++) {
+            String line = source.get(i);
+            int start = 0;
+            while (start < line.length() && Character.isWhitespace(line.charAt(start))) start++;
+            if (start == line.length() || line.charAt(start) == '#') continue;
+            int colon = line.indexOf(':', start);
+            if (colon >= 0) labels.put(line.substring(start, colon).trim(), n);
+            lineOf[n++] = i;
+        }
+
+        // Second pass: each chunk fills its own slice of the result and keeps its own errors
+        Instruction[] parsed = new Instruction[n];
+        int chunks = n < PARALLEL_THRESHOLD ? 1 : (n + CHUNK_LINES - 1) / CHUNK_LINES;
+        List<List<String>> chunkErrors = new ArrayList<>();
+        for (int c = 0; c < chunks; c++) chunkErrors.add(new ArrayList<>());
+        final int count = n;
+        IntStream range = IntStream.range(0, chunks);
+        (chunks > 1 ? range.parallel() : range).forEach(c -> {
+            int from = (int) ((long) count * c / chunks), to = (int) ((long) count * (c + 1) / chunks);
+            for (int i = from; i < to; i++) {
+                try {
+                    parsed[i] = parse(source.get(lineOf[i]).trim(), labels, i);
+                } catch (IllegalArgumentException ex) {
+                    chunkErrors.get(c).add("Line " + (lineOf[i] + 1) + ": " + ex.getMessage());
+                }
+            }
+        });
+
+        List<Instruction> ins = new ArrayList<>(n);
+        for (Instruction i : parsed) if (i != null) ins.add(i);
+        for (List<String> e : chunkErrors) errors.addAll(e);
+        return ins;
+    }
+
+    // very simple parser for forms like: L.D F6, 0(R2)
+    // labels == null leaves unknown branch targets unresolved (offset 0), as in dynamic traces
+    public static Instruction parse(String line, Map<String, Integer> labels, int currentIndex) {
+        try {
+            String raw = line;
+
+            // Strip label if present (e.g., "LOOP: L.D F0, 8(R1)")
+            if (line.contains(":")) {
+                line = line.substring(line.indexOf(':') + 1).trim();
+            }
+
+            int opEnd = 0;
+            while (opEnd < line.length() && !Character.isWhitespace(line.charAt(opEnd))) opEnd++;
+            InstructionType type = mnemonic(line.substring(0, opEnd));
+            String rest = line.substring(line.indexOf(' ') + 1).trim();
+            String[] parts = rest.split(",");
+            switch (type) {
+                case LD: case LW: case L_D: case L_S:
+                    String dest = register(parts[0].trim());
+                    String addr = parts[1].trim();
+                    // form: offset(Rx)
+                    int p = addr.indexOf('(');
+                    int imm = Integer.parseInt(addr.substring(0, p).trim());
+                    String base = register(addr.substring(p + 1, addr.indexOf(')')).trim());
+                    return new Instruction(type, dest, base, null, imm, raw);
+                case SD: case SW: case S_S: case S_D: case S_W:
+                    // src, offset(Rx)
+                    String src = register(parts[0].trim());
+                    String addr2 = parts[1].trim();
+                    int p2 = addr2.indexOf('(');
+                    int imm2 = Integer.parseInt(addr2.substring(0, p2).trim());
+                    String base2 = register(addr2.substring(p2 + 1, addr2.indexOf(')')).trim());
+                    return new Instruction(type, null, base2, src, imm2, raw);
+                case ADD: case SUB: case MUL: case DIV:
+                case ADD_D: case SUB_D: case MUL_D: case DIV_D:
+                case ADD_S: case SUB_S: case MUL_S: case DIV_S:
+                    // dest, src1, src2
+                    String d = register(parts[0].trim());
+                    String s1 = register(parts[1].trim());
+                    String s2 = register(parts[2].trim());
+                    return new Instruction(type, d, s1, s2, null, raw);
+                case ADDI: case SUBI: case DADDI: case DSUBI:
+                    // dest, src, imm
+                    String dd = register(parts[0].trim());
+                    String ss = register(parts[1].trim());
+                    int imm3 = Integer.parseInt(parts[2].trim());
+                    return new Instruction(type, dd, ss, null, imm3, raw);
+                case BEQ: case BNE:
+                    // BEQ R1, R2, offset or BEQ R1, R2, LABEL
+                    String bb0 = register(parts[0].trim());
+                    String bb1 = register(parts[1].trim());
+                    String offsetStr = parts[2].trim();
+                    int off;
+
+                    // Check if it's a label or numeric offset
+                    if (labels != null && labels.containsKey(offsetStr)) {
+                        // Calculate relative offset: target - (current + 1)
+                        off = labels.get(offsetStr) - (currentIndex + 1);
+                    } else if (labels == null && !isNumber(offsetStr)) {
+                        off = 0;
+                    } else {
+                        // Direct numeric offset
+                        off = Integer.parseInt(offsetStr);
+                    }
+
+                    return new Instruction(type, null, bb0, bb1, off, raw);
+                default:
+                    return new Instruction(type, null, null, null, null, raw);
+            }
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Failed parsing line: " + line + " -> " + ex.getMessage(), ex);
+        }
+    }
+
+    private static final Map<String, InstructionType> MNEMONICS = new HashMap<>();
+    static {
+        for (InstructionType t : InstructionType.values()) MNEMONICS.put(t.name(), t);
+    }
+
+    // Shared name strings for R0-R127 and F0-F31, so large programs don't keep a copy per operand
+    private static final Map<String, String> REGISTER_NAMES = new HashMap<>();
+    static {
+        for (int i = 0; i < 128; i++) REGISTER_NAMES.put("R" + i, "R" + i);
+        for (int i = 0; i < RegisterFile.FP_REGS; i++) REGISTER_NAMES.put("F" + i, "F" + i);
+    }
+
+    static String register(String name) {
+        String shared = REGISTER_NAMES.get(name);
+        if (shared != null) return shared;
+        // The floating-point bank is fixed at F0-F31
+        if (name.length() > 1 && name.charAt(0) == 'F' && Character.isDigit(name.charAt(1))) {
+            throw new IllegalArgumentException("No floating-point register " + name);
+        }
+        return name;
+    }
+
+    // "L.D" / "l.d" / "L_D" -> L_D
+    private static InstructionType mnemonic(String op) {
+        InstructionType t = MNEMONICS.get(op);
+        if (t == null) t = MNEMONICS.get(op.replace('.', '_').toUpperCase());
+        if (t == null) throw new IllegalArgumentException("Unknown instruction " + op);
+        return t;
+    }
+
+    // Canonical assembly text, the inverse of parse (used for instructions without source text)
+    public static String format(Instruction ins) {
+        StringBuilder sb = new StringBuilder(ins.type.name().replace('_', '.'));
+        switch (ins.type) {
+            case LD: case LW: case L_D: case L_S:
+                return sb.append(' ').append(ins.dest).append(", ").append(ins.immediate)
+                         .append('(').append(ins.src1).append(')').toString();
+            case SD: case SW: case S_S: case S_D: case S_W:
+                return sb.append(' ').append(ins.src2).append(", ").append(ins.immediate)
+                         .append('(').append(ins.src1).append(')').toString();
+            case ADDI: case SUBI: case DADDI: case DSUBI:
+                return sb.append(' ').append(ins.dest).append(", ").append(ins.src1)
+                         .append(", ").append(ins.immediate).toString();
+            case BEQ: case BNE:
+                return sb.append(' ').append(ins.src1).append(", ").append(ins.src2)
+                         .append(", ").append(ins.immediate).toString();
+            case NOP:
+                return sb.toString();
+            default:
+                return sb.append(' ').append(ins.dest).append(", ").append(ins.src1)
+                         .append(", ").append(ins.src2).toString();
+        }
+    }
+
+    // Decimal or 0x-prefixed hex integer
+    public static int parseInt(String s) {
+        s = s.trim();
+        if (s.startsWith("0x") || s.startsWith("0X")) return (int) Long.parseLong(s.substring(2), 16);
+        return Integer.parseInt(s);
+    }
+
+    private static boolean isNumber(String s) {
+        if (s.isEmpty()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!Character.isDigit(c) && !(i == 0 && (c == '-' || c == '+'))) return false;
+        }
+        return s.length() > 1 || Character.isDigit(s.charAt(0));
+    }
+}
@@ -0,0 +1,82 @@
+package com.tomasulo;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+// Instruction queue with O(1) removal at the head and O(1) reload from a program index.
+// After reload() the queue is a view of the program from that index on; the program must not change
+// while it is viewed (TomasuloEngine reloads after every program change). Any other modification
+// first copies the remaining instructions.
+public class InstructionQueue extends AbstractList<Instruction> {
+    private List<Instruction> backing = new ArrayList<>();
+    private int head = 0;
+    private boolean shared = false; // backing is a program, not owned by the queue
+
+    // Make the queue program[from..]
+    public void reload(List<Instruction> program, int from) {
+        backing = program;
+        head = Math.min(Math.max(from, 0), program.size());
+        shared = true;
+        modCount++;
+    }
+
+    @Override
+    public Instruction get(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        return backing.get(head + index);
+    }
+
+    @Override
+    public int size() {
+        return backing.size() - head;
+    }
+
+    @Override
+    public Instruction remove(int index) {
+        if (index == 0) {
+            Instruction ins = get(0);
+            head++;
+            modCount++;
+            if (!shared && head >= 1024 && head * 2 >= backing.size()) compact();
+            return ins;
+        }
+        own();
+        modCount++;
+        return backing.remove(head + index);
+    }
+
+    @Override
+    public void add(int index, Instruction ins) {
+        if (index < 0 || index > size()) throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        own();
+        backing.add(head + index, ins);
+        modCount++;
+    }
+
+    @Override
+    public Instruction set(int index, Instruction ins) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        own();
+        return backing.set(head + index, ins);
+    }
+
+    @Override
+    public void clear() {
+        backing = new ArrayList<>();
+        head = 0;
+        shared = false;
+        modCount++;
+    }
+
+    private void own() {
+        if (!shared) return;
+        compact();
+        shared = false;
+    }
+
+    private void compact() {
+        backing = new ArrayList<>(backing.subList(head, backing.size()));
+        head = 0;
+    }
+}
@@ -0,0 +1,18 @@
+package com.tomasulo;
+
+import java.io.Closeable;
+
+// Stream of dynamic instructions feeding the engine's issue stage in trace-driven mode.
+// The engine peeks the head until it can issue it, then advances; nothing behind the head is retained.
+public interface InstructionSource extends Closeable {
+    // Next instruction to issue, or null once the stream is exhausted
+    Instruction peek();
+
+    void advance();
+
+    // Skip n instructions, e.g. to resume a restored checkpoint at engine.getTraceConsumed()
+    default InstructionSource skip(long n) {
+        for (long i = 0; i < n && peek() != null; i++) advance();
+        return this;
+    }
+}
@@ -1,9 +1,14 @@
 package com.tomasulo;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
@@ -16,26 +21,47 @@ import javafx.stage.Stage;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
 
 public class MainApp extends Application {
     private final SimulatorConfig cfg = new SimulatorConfig();
     private TomasuloEngine engine;
 
     private TextArea logArea = new TextArea();
-    private TableView<String> instrTable = new TableView<>();
-    private TableView<Map.Entry<String, Integer>> registerTable = new TableView<>();
-    private TableView<Map<String, Object>> cacheTable = new TableView<>();
-    private TableView<Map<String, Object>> memoryTable = new TableView<>();
+    private TableView<Instruction> instrTable = new TableView<>();
+    private TableView<RegisterRow> registerTable = new TableView<>();
+    private TableView<Integer> cacheTable = new TableView<>(); // rows are cache line indices
+    private TableView<Integer> memoryTable = new TableView<>(); // rows index into the memory view
+    private final CheckBox nonZeroOnly = new CheckBox("Non-zero only");
+    private int[] nonZeroWords = new int[0]; // word addresses listed when nonZeroOnly is selected
     private TableView<Map<String, Object>> finishCycleTable = new TableView<>();
     private Label cycleLabel = new Label("Cycle: 0");
     private Label cacheStatsLabel = new Label("Cache: Hits=0 Misses=0");
+    private TitledPane countersPane = new TitledPane();
+    private Label countersLabel = new Label();
     
-    // Track instruction finish cycles (station name -> finish info)
-    private Map<String, Map<String, Object>> instructionHistory = new HashMap<>();
+    // Timing rows for the most recent dynamic instructions (engine.trace record id -> row, incomplete only)
+    private static final int MAX_TIMING_ROWS = 200;
+    private final Map<Long, TimingRow> openTimingRows = new HashMap<>();
+    private long traceShown = 0; // trace records that already have a row
+
+    // Rendered view state, patched from the engine's per-cycle ChangeSet
+    private static final int LOG_LINES = 50;
+    private static final int MAX_PARSE_ERRORS = 20; // parse errors copied to the log per load
+    private TomasuloEngine renderedEngine = null; // engine the views were last built for
+    private final Map<String, StationRow> stationRows = new HashMap<>();
+    private final Map<String, ReservationStation> stationsByName = new HashMap<>();
+    private final Map<String, RegisterRow> registerRows = new HashMap<>();
+    private final ArrayDeque<Integer> logLineLengths = new ArrayDeque<>();
+    private long logShown = 0; // engine.history entries already appended to logArea
     
     // Station box containers
     private VBox addStationsBox = new VBox(5);
@@ -48,10 +74,33 @@ public class MainApp extends Application {
     private TextField addLatencyField, mulLatencyField, divLatencyField, loadLatencyField, storeLatencyField, intLatencyField;
     private TextField cacheSizeField, blockSizeField, hitLatencyField, missPenaltyField;
     private TextField addStationsField, mulStationsField, intStationsField, loadBuffersField;
+    private TextField issueWidthField, cdbWidthField, readPortsField, writePortsField, renameWidthField;
+    private TextField physRegsField;
+    private TextField mulIntervalField, divUnitsField;
+    private final CheckBox divEarlyOutBox = new CheckBox("Early-out divide");
+    private TextField windowSizeField, addUnitsField, mulUnitsField, intUnitsField;
+    private ComboBox<SimulatorConfig.SelectPolicy> selectPolicyBox;
+    private Label addSectionTitle; // shows the issue window instead of the Add pool in window mode
+    private TextField dramChannelsField, dramBanksField, dramTRCDField, dramTCASField, dramTRPField, dramBurstField;
+    private TextField tlbEntriesField, tlbAssocField, pageSizeField, walkLevelsField, walkLatencyField;
+    private final CheckBox walkCachedBox = new CheckBox("Cache page walks");
+    private TextField fetchWidthField, decodeQueueField, icacheSizeField, icacheBlockField, icacheAssocField, icacheMissField;
+
+    // Continuous run: the engine steps on a worker thread, the UI samples it at a fixed frame rate
+    private static final long FRAME_NANOS = 1_000_000_000L / 30;
+    private SimulationRunner runner;
+    private AnimationTimer renderTimer;
+    private long lastRender = 0;
+    private Button runBtn;
+    private TextField rateField, breakField;
+    private ComboBox<String> breakKind;
+    private final List<Node> stepControls = new ArrayList<>(); // disabled while running
+    private InstructionSource traceReader; // open dynamic trace feeding the engine, if any
 
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Tomasulo Simulator");
+        cfg.historyLimit = 10_000; // the log pane only shows the tail
         engine = new TomasuloEngine(cfg);
 
         BorderPane root = new BorderPane();
@@ -65,11 +114,21 @@ public class MainApp extends Application {
         Button loadBtn = new Button("Load File");
         loadBtn.setOnAction(e -> {
             FileChooser fc = new FileChooser();
-            fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("Text Files", "*.txt"));
+            fc.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Text Files", "*.txt"),
+                new FileChooser.ExtensionFilter("Binary programs", "*.tbin"));
             File f = fc.showOpenDialog(primaryStage);
             if (f != null) loadFromFile(f);
         });
 
+        Button loadTraceBtn = new Button("Load Trace");
+        loadTraceBtn.setOnAction(e -> {
+            FileChooser fc = new FileChooser();
+            fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("Dynamic traces", "*.trace", "*.txt", "*.tbin"));
+            File f = fc.showOpenDialog(primaryStage);
+            if (f != null) loadTrace(f);
+        });
+
         Button stepBtn = new Button("Step Cycle");
         stepBtn.setOnAction(e -> {
             engine.step();
@@ -85,8 +144,8 @@ public class MainApp extends Application {
         Button resetBtn = new Button("Reset");
         resetBtn.setOnAction(e -> {
             applyConfig();
+            closeTrace();
             engine = new TomasuloEngine(cfg);
-            instructionHistory.clear(); // Clear instruction history on reset
             refreshUI();
         });
         
@@ -97,9 +156,90 @@ public class MainApp extends Application {
             log("Initialized registers for Test Case 1");
         });
         
+        Button saveCkptBtn = new Button("Save Checkpoint");
+        saveCkptBtn.setOnAction(e -> {
+            FileChooser fc = new FileChooser();
+            fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("Checkpoints", "*.ckpt"));
+            File f = fc.showSaveDialog(primaryStage);
+            if (f == null) return;
+            try {
+                EngineCheckpoint.saveToFile(engine, f);
+                log("Saved checkpoint at cycle " + engine.cycle + " to " + f.getName());
+            } catch (Exception ex) {
+                log("Error saving checkpoint: " + ex.getMessage());
+            }
+        });
+
+        Button loadCkptBtn = new Button("Load Checkpoint");
+        loadCkptBtn.setOnAction(e -> {
+            FileChooser fc = new FileChooser();
+            fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("Checkpoints", "*.ckpt"));
+            File f = fc.showOpenDialog(primaryStage);
+            if (f == null) return;
+            try {
+                // Restore under the current config so latencies can differ from the saved run
+                applyConfig();
+                closeTrace();
+                engine = EngineCheckpoint.restoreFromFile(f, cfg);
+                if (engine.isTraceMode()) {
+                    log("Checkpoint is trace-driven; reload the trace to continue after " + engine.getTraceConsumed() + " instructions");
+                }
+                refreshUI();
+            } catch (Exception ex) {
+                log("Error loading checkpoint: " + ex.getMessage());
+            }
+        });
+
         cacheStatsLabel.setStyle("-fx-font-size: 11px; -fx-text-fill: #666;");
         
-        controls.getChildren().addAll(cycleLabel, new Separator(), loadBtn, stepBtn, run10, resetBtn, initRegsBtn, new Separator(), cacheStatsLabel);
+        controls.getChildren().addAll(cycleLabel, new Separator(), loadBtn, loadTraceBtn, stepBtn, run10, resetBtn, initRegsBtn, saveCkptBtn, loadCkptBtn, new Separator(), cacheStatsLabel);
+        stepControls.addAll(List.of(loadBtn, loadTraceBtn, stepBtn, run10, resetBtn, initRegsBtn, saveCkptBtn, loadCkptBtn));
+        
+        // Continuous run controls
+        HBox runControls = new HBox(10);
+        runControls.setAlignment(Pos.CENTER_LEFT);
+        runBtn = new Button("Run");
+        runBtn.setOnAction(e -> {
+            if (runner != null && runner.isRunning()) runner.pause();
+            else startRun();
+        });
+        rateField = new TextField("0");
+        rateField.setPrefWidth(70);
+        breakKind = new ComboBox<>(FXCollections.observableArrayList("None", "Cycle", "PC", "Register", "Cache miss"));
+        breakKind.setValue("None");
+        breakField = new TextField();
+        breakField.setPromptText("e.g. 100, 4, F4=75");
+        breakField.setPrefWidth(110);
+        Button exportBtn = new Button("Export Timing");
+        exportBtn.setOnAction(e -> {
+            FileChooser fc = new FileChooser();
+            fc.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV timing table", "*.csv"),
+                new FileChooser.ExtensionFilter("Konata pipeline log", "*.kanata", "*.log"));
+            File f = fc.showSaveDialog(primaryStage);
+            if (f == null) return;
+            try (java.io.Writer w = new java.io.FileWriter(f)) {
+                synchronized (engine) {
+                    if (f.getName().toLowerCase().endsWith(".csv")) engine.trace.exportCsv(w);
+                    else engine.trace.exportKonata(w);
+                }
+                log("Exported " + engine.trace.size() + " instruction timings to " + f.getName());
+            } catch (Exception ex) {
+                log("Error exporting timing: " + ex.getMessage());
+            }
+        });
+        
+        runControls.getChildren().addAll(runBtn, new Label("Cycles/s (0 = max):"), rateField,
+            new Label("Run until:"), breakKind, breakField, new Separator(), exportBtn);
+        
+        renderTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (now - lastRender < FRAME_NANOS) return;
+                lastRender = now;
+                refreshUI();
+            }
+        };
         
         // Config panel
         TitledPane configPane = new TitledPane();
@@ -143,6 +283,19 @@ public class MainApp extends Application {
         intLatencyField.setPrefWidth(60);
         configGrid.add(intLatencyField, 1, row++);
         
+        configGrid.add(new Label("Mul Interval (0=off):"), 0, row);
+        mulIntervalField = new TextField(String.valueOf(cfg.mulInterval));
+        mulIntervalField.setPrefWidth(60);
+        configGrid.add(mulIntervalField, 1, row);
+        
+        configGrid.add(new Label("Dividers (0=off):"), 2, row);
+        divUnitsField = new TextField(String.valueOf(cfg.divUnits));
+        divUnitsField.setPrefWidth(60);
+        configGrid.add(divUnitsField, 3, row++);
+        
+        divEarlyOutBox.setSelected(cfg.divEarlyOut);
+        configGrid.add(divEarlyOutBox, 0, row++, 2, 1);
+        
         configGrid.add(new Label("Cache Size (B):"), 0, row);
         cacheSizeField = new TextField(String.valueOf(cfg.cacheSizeBytes));
         cacheSizeField.setPrefWidth(80);
@@ -183,16 +336,170 @@ public class MainApp extends Application {
         loadBuffersField.setPrefWidth(60);
         configGrid.add(loadBuffersField, 3, row++);
         
+        configGrid.add(new Label("Issue Window (0=off):"), 0, row);
+        windowSizeField = new TextField(String.valueOf(cfg.windowSize));
+        windowSizeField.setPrefWidth(60);
+        configGrid.add(windowSizeField, 1, row);
+        
+        configGrid.add(new Label("Select Policy:"), 2, row);
+        selectPolicyBox = new ComboBox<>(FXCollections.observableArrayList(SimulatorConfig.SelectPolicy.values()));
+        selectPolicyBox.setValue(cfg.selectPolicy);
+        configGrid.add(selectPolicyBox, 3, row++);
+        
+        configGrid.add(new Label("Add Units:"), 0, row);
+        addUnitsField = new TextField(String.valueOf(cfg.addUnits));
+        addUnitsField.setPrefWidth(60);
+        configGrid.add(addUnitsField, 1, row);
+        
+        configGrid.add(new Label("Mul Units:"), 2, row);
+        mulUnitsField = new TextField(String.valueOf(cfg.mulUnits));
+        mulUnitsField.setPrefWidth(60);
+        configGrid.add(mulUnitsField, 3, row++);
+        
+        configGrid.add(new Label("Int Units:"), 0, row);
+        intUnitsField = new TextField(String.valueOf(cfg.intUnits));
+        intUnitsField.setPrefWidth(60);
+        configGrid.add(intUnitsField, 1, row++);
+        
+        configGrid.add(new Label("Issue Width:"), 0, row);
+        issueWidthField = new TextField(String.valueOf(cfg.issueWidth));
+        issueWidthField.setPrefWidth(60);
+        configGrid.add(issueWidthField, 1, row);
+        
+        configGrid.add(new Label("CDB Width:"), 2, row);
+        cdbWidthField = new TextField(String.valueOf(cfg.cdbWidth));
+        cdbWidthField.setPrefWidth(60);
+        configGrid.add(cdbWidthField, 3, row++);
+        
+        configGrid.add(new Label("Reg Read Ports:"), 0, row);
+        readPortsField = new TextField(String.valueOf(cfg.regReadPorts));
+        readPortsField.setPrefWidth(60);
+        configGrid.add(readPortsField, 1, row);
+        
+        configGrid.add(new Label("Reg Write Ports:"), 2, row);
+        writePortsField = new TextField(String.valueOf(cfg.regWritePorts));
+        writePortsField.setPrefWidth(60);
+        configGrid.add(writePortsField, 3, row++);
+        
+        configGrid.add(new Label("Rename Width:"), 0, row);
+        renameWidthField = new TextField(String.valueOf(cfg.renameWidth));
+        renameWidthField.setPrefWidth(60);
+        configGrid.add(renameWidthField, 1, row);
+        
+        configGrid.add(new Label("Phys Regs (0=off):"), 2, row);
+        physRegsField = new TextField(String.valueOf(cfg.physRegs));
+        physRegsField.setPrefWidth(60);
+        configGrid.add(physRegsField, 3, row++);
+        
+        configGrid.add(new Label("Fetch Width (0=off):"), 0, row);
+        fetchWidthField = new TextField(String.valueOf(cfg.fetchWidth));
+        fetchWidthField.setPrefWidth(60);
+        configGrid.add(fetchWidthField, 1, row);
+        
+        configGrid.add(new Label("Decode Queue:"), 2, row);
+        decodeQueueField = new TextField(String.valueOf(cfg.decodeQueueSize));
+        decodeQueueField.setPrefWidth(60);
+        configGrid.add(decodeQueueField, 3, row++);
+        
+        configGrid.add(new Label("I-Cache Size:"), 0, row);
+        icacheSizeField = new TextField(String.valueOf(cfg.icacheSizeBytes));
+        icacheSizeField.setPrefWidth(60);
+        configGrid.add(icacheSizeField, 1, row);
+        
+        configGrid.add(new Label("I-Cache Block:"), 2, row);
+        icacheBlockField = new TextField(String.valueOf(cfg.icacheBlockSize));
+        icacheBlockField.setPrefWidth(60);
+        configGrid.add(icacheBlockField, 3, row++);
+        
+        configGrid.add(new Label("I-Cache Ways:"), 0, row);
+        icacheAssocField = new TextField(String.valueOf(cfg.icacheAssoc));
+        icacheAssocField.setPrefWidth(60);
+        configGrid.add(icacheAssocField, 1, row);
+        
+        configGrid.add(new Label("I-Cache Miss:"), 2, row);
+        icacheMissField = new TextField(String.valueOf(cfg.icacheMissPenalty));
+        icacheMissField.setPrefWidth(60);
+        configGrid.add(icacheMissField, 3, row++);
+        
+        configGrid.add(new Label("DRAM Channels (0=off):"), 0, row);
+        dramChannelsField = new TextField(String.valueOf(cfg.dramChannels));
+        dramChannelsField.setPrefWidth(60);
+        configGrid.add(dramChannelsField, 1, row);
+        
+        configGrid.add(new Label("DRAM Banks:"), 2, row);
+        dramBanksField = new TextField(String.valueOf(cfg.dramBanks));
+        dramBanksField.setPrefWidth(60);
+        configGrid.add(dramBanksField, 3, row++);
+        
+        configGrid.add(new Label("tRCD:"), 0, row);
+        dramTRCDField = new TextField(String.valueOf(cfg.dramTRCD));
+        dramTRCDField.setPrefWidth(60);
+        configGrid.add(dramTRCDField, 1, row);
+        
+        configGrid.add(new Label("tCAS:"), 2, row);
+        dramTCASField = new TextField(String.valueOf(cfg.dramTCAS));
+        dramTCASField.setPrefWidth(60);
+        configGrid.add(dramTCASField, 3, row++);
+        
+        configGrid.add(new Label("tRP:"), 0, row);
+        dramTRPField = new TextField(String.valueOf(cfg.dramTRP));
+        dramTRPField.setPrefWidth(60);
+        configGrid.add(dramTRPField, 1, row);
+        
+        configGrid.add(new Label("Burst Cycles:"), 2, row);
+        dramBurstField = new TextField(String.valueOf(cfg.dramBurstCycles));
+        dramBurstField.setPrefWidth(60);
+        configGrid.add(dramBurstField, 3, row++);
+        
+        configGrid.add(new Label("TLB Entries (0=off):"), 0, row);
+        tlbEntriesField = new TextField(String.valueOf(cfg.tlbEntries));
+        tlbEntriesField.setPrefWidth(60);
+        configGrid.add(tlbEntriesField, 1, row);
+        
+        configGrid.add(new Label("TLB Assoc:"), 2, row);
+        tlbAssocField = new TextField(String.valueOf(cfg.tlbAssoc));
+        tlbAssocField.setPrefWidth(60);
+        configGrid.add(tlbAssocField, 3, row++);
+        
+        configGrid.add(new Label("Page Size (B):"), 0, row);
+        pageSizeField = new TextField(String.valueOf(cfg.pageSizeBytes));
+        pageSizeField.setPrefWidth(60);
+        configGrid.add(pageSizeField, 1, row);
+        
+        configGrid.add(new Label("Walk Levels:"), 2, row);
+        walkLevelsField = new TextField(String.valueOf(cfg.pageWalkLevels));
+        walkLevelsField.setPrefWidth(60);
+        configGrid.add(walkLevelsField, 3, row++);
+        
+        configGrid.add(new Label("Walk Latency/Level:"), 0, row);
+        walkLatencyField = new TextField(String.valueOf(cfg.pageWalkLatency));
+        walkLatencyField.setPrefWidth(60);
+        configGrid.add(walkLatencyField, 1, row);
+        
+        walkCachedBox.setSelected(cfg.pageWalkCached);
+        configGrid.add(walkCachedBox, 2, row++, 2, 1);
+        
         Button applyBtn = new Button("Apply Config");
         applyBtn.setOnAction(e -> {
             applyConfig();
+            closeTrace();
             engine = new TomasuloEngine(cfg);
             refreshUI();
         });
         configGrid.add(applyBtn, 0, row, 2, 1);
+        stepControls.add(applyBtn);
         
         configPane.setContent(configGrid);
-        topBox.getChildren().addAll(controls, configPane);
+        
+        // Performance counters panel
+        countersPane.setText("Performance Counters");
+        countersPane.setExpanded(false);
+        countersLabel.setFont(Font.font("Monospaced", 11));
+        countersLabel.setPadding(new Insets(5));
+        countersPane.setContent(countersLabel);
+        countersPane.expandedProperty().addListener((obs, was, now) -> refreshUI());
+        
+        topBox.getChildren().addAll(controls, runControls, configPane, countersPane);
         root.setTop(topBox);
 
         // Center: Main layout with all stations visible
@@ -214,8 +521,8 @@ public class MainApp extends Application {
         instrTable.setItems(FXCollections.observableArrayList());
         instrTable.setPrefHeight(400);
         instrTable.setMaxHeight(400);
-        TableColumn<String, String> instrCol = new TableColumn<>("Instruction");
-        instrCol.setCellValueFactory(d -> new javafx.beans.property.SimpleStringProperty(d.getValue()));
+        TableColumn<Instruction, String> instrCol = new TableColumn<>("Instruction");
+        instrCol.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().toString()));
         instrCol.setPrefWidth(300);
         instrTable.getColumns().add(instrCol);
         instrBox.getChildren().addAll(instrLabel, instrTable);
@@ -228,18 +535,14 @@ public class MainApp extends Application {
         registerTable.setItems(FXCollections.observableArrayList());
         registerTable.setPrefHeight(400);
         registerTable.setMaxHeight(400);
-        TableColumn<Map.Entry<String, Integer>, String> regNameCol = new TableColumn<>("Register");
-        regNameCol.setCellValueFactory(d -> new javafx.beans.property.SimpleStringProperty(d.getValue().getKey()));
+        TableColumn<RegisterRow, String> regNameCol = new TableColumn<>("Register");
+        regNameCol.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().name));
         regNameCol.setPrefWidth(80);
-        TableColumn<Map.Entry<String, Integer>, String> regValCol = new TableColumn<>("Value");
-        regValCol.setCellValueFactory(d -> new javafx.beans.property.SimpleStringProperty(String.valueOf(d.getValue().getValue())));
+        TableColumn<RegisterRow, String> regValCol = new TableColumn<>("Value");
+        regValCol.setCellValueFactory(d -> d.getValue().value);
         regValCol.setPrefWidth(100);
-        TableColumn<Map.Entry<String, Integer>, String> regTagCol = new TableColumn<>("Qi");
-        regTagCol.setCellValueFactory(d -> {
-            String regName = d.getValue().getKey();
-            String tag = engine.registers.getTag(regName);
-            return new javafx.beans.property.SimpleStringProperty(tag != null ? tag : "");
-        });
+        TableColumn<RegisterRow, String> regTagCol = new TableColumn<>("Qi");
+        regTagCol.setCellValueFactory(d -> d.getValue().tag);
         regTagCol.setPrefWidth(80);
         registerTable.getColumns().addAll(regNameCol, regValCol, regTagCol);
         regBox.getChildren().addAll(regLabel, registerTable);
@@ -247,7 +550,7 @@ public class MainApp extends Application {
         
         // Finish Cycle Display - styled like reservation stations
         VBox finishBox = new VBox(8);
-        Label finishLabel = new Label("Instruction Finish Times");
+        Label finishLabel = new Label("Instruction Timing");
         finishLabel.setFont(Font.font("Arial", FontWeight.BOLD, 14));
         finishLabel.setTextFill(Color.DARKBLUE);
         
@@ -256,8 +559,8 @@ public class MainApp extends Application {
         finishHeader.setPadding(new Insets(5));
         finishHeader.setStyle("-fx-background-color: #E0E0E0; -fx-border-color: #999; -fx-border-width: 1;");
         
-        String[] finishHeaders = {"Station", "Instruction", "Finish", "Status"};
-        int[] finishColWidths = {70, 150, 80, 90};
+        String[] finishHeaders = {"Station", "Instruction", "Issue", "Execute", "Write"};
+        int[] finishColWidths = TimingRow.COL_WIDTHS;
         
         for (int i = 0; i < finishHeaders.length; i++) {
             VBox headerCell = new VBox();
@@ -308,6 +611,7 @@ public class MainApp extends Application {
         
         // Add/Sub Stations
         VBox addSection = createStationSection("Add/Sub Stations", addStationsBox);
+        addSectionTitle = (Label) addSection.getChildren().get(0);
         stationsGrid.add(addSection, 0, 0);
         
         // Mul/Div Stations
@@ -375,208 +679,222 @@ public class MainApp extends Application {
         return section;
     }
     
-    private HBox createStationBox(Map<String, Object> stationData) {
-        HBox box = new HBox(0);
-        box.setPadding(new Insets(5));
-        box.setStyle("-fx-background-color: #F5F5F5; -fx-border-color: #999; -fx-border-width: 1;");
-        
-        String name = stationData.get("name") != null ? stationData.get("name").toString() : "";
-        boolean busy = stationData.get("busy") != null && Boolean.parseBoolean(stationData.get("busy").toString());
-        String inst = stationData.get("inst") != null ? stationData.get("inst").toString() : "";
-        String vj = stationData.get("vj") != null ? stationData.get("vj").toString() : "";
-        String vk = stationData.get("vk") != null ? stationData.get("vk").toString() : "";
-        String qj = stationData.get("qj") != null ? stationData.get("qj").toString() : "";
-        String qk = stationData.get("qk") != null ? stationData.get("qk").toString() : "";
-        String rem = stationData.get("remaining") != null ? stationData.get("remaining").toString() : "0";
-        
-        // Extract op from instruction if available
-        String op = "";
-        if (!inst.isEmpty() && inst.contains(" ")) {
-            op = inst.split("\\s+")[0];
-        }
-        
-        // Column widths matching header
-        int[] colWidths = {60, 50, 70, 60, 60, 60, 60, 50};
-        String[] values = {name, busy ? "Yes" : "No", op, vj, vk, qj, qk, rem};
-        Color[] colors = {
-            Color.BLACK, // name
-            busy ? Color.RED : Color.BLACK, // busy
-            Color.BLACK, // op
-            Color.BLACK, // vj
-            Color.BLACK, // vk
-            !qj.isEmpty() ? Color.BLUE : Color.BLACK, // qj
-            !qk.isEmpty() ? Color.BLUE : Color.BLACK, // qk
-            Color.BLACK  // rem
-        };
-        
-        // Create cells with borders for each column
-        for (int i = 0; i < values.length; i++) {
-            VBox cell = new VBox();
-            cell.setPrefWidth(colWidths[i]);
-            cell.setAlignment(Pos.CENTER);
-            cell.setStyle("-fx-border-color: #999; -fx-border-width: 0 1 0 0; -fx-padding: 5;");
-            
-            Label label = new Label(values[i]);
-            if (i == 0) { // Name column
-                label.setFont(Font.font("Arial", FontWeight.BOLD, 11));
-            } else {
-                label.setFont(Font.font("Arial", 11));
-            }
-            label.setTextFill(colors[i]);
-            label.setAlignment(Pos.CENTER);
-            cell.getChildren().add(label);
-            box.getChildren().add(cell);
-        }
-        
-        return box;
-    }
-    
-    private HBox createFinishTimeRow(Map<String, Object> finishData) {
-        HBox box = new HBox(0);
-        box.setPadding(new Insets(5));
-        box.setStyle("-fx-background-color: #F5F5F5; -fx-border-color: #999; -fx-border-width: 1;");
-        
-        String station = finishData.get("station") != null ? finishData.get("station").toString() : "";
-        String instruction = finishData.get("instruction") != null ? finishData.get("instruction").toString() : "";
-        String finish = finishData.get("finishCycle") != null ? finishData.get("finishCycle").toString() : "---";
-        String status = finishData.get("status") != null ? finishData.get("status").toString() : "---";
-        
-        // Column widths matching header
-        int[] colWidths = {70, 150, 80, 90};
-        String[] values = {station, instruction, finish, status};
-        Color[] colors = {
-            Color.BLACK, // station
-            Color.BLACK, // instruction
-            Color.BLACK, // finish
-            "Completed".equals(status) ? Color.GREEN : Color.ORANGE // status
-        };
-        
-        // Create cells with borders for each column
-        for (int i = 0; i < values.length; i++) {
-            VBox cell = new VBox();
-            cell.setPrefWidth(colWidths[i]);
-            cell.setAlignment(Pos.CENTER);
-            cell.setStyle("-fx-border-color: #999; -fx-border-width: 0 1 0 0; -fx-padding: 5;");
-            
-            Label label = new Label(values[i]);
-            if (i == 0) { // Station column
-                label.setFont(Font.font("Arial", FontWeight.BOLD, 11));
-            } else {
-                label.setFont(Font.font("Arial", 11));
-            }
-            label.setTextFill(colors[i]);
-            label.setAlignment(Pos.CENTER);
-            cell.getChildren().add(label);
-            box.getChildren().add(cell);
-        }
-        
-        return box;
-    }
-    
     private VBox createCacheSection() {
         VBox section = new VBox(8);
         Label titleLabel = new Label("Data Cache");
         titleLabel.setFont(Font.font("Arial", FontWeight.BOLD, 14));
         titleLabel.setTextFill(Color.DARKBLUE);
         
-        // Create cache table
+        // Create cache table; rows are line indices and cells read the cache directly,
+        // so only the visible lines are ever formatted
         cacheTable.setPrefHeight(500);
         cacheTable.setMaxHeight(500);
         cacheTable.setPrefWidth(350);
         
         // Index column
-        TableColumn<Map<String, Object>, String> indexCol = new TableColumn<>("Index");
-        indexCol.setCellValueFactory(d -> new javafx.beans.property.SimpleStringProperty(
-            d.getValue().get("index") != null ? d.getValue().get("index").toString() : ""));
+        TableColumn<Integer, String> indexCol = new TableColumn<>("Index");
+        indexCol.setCellValueFactory(d -> new SimpleStringProperty(String.valueOf(d.getValue())));
         indexCol.setPrefWidth(50);
         
         // Valid column
-        TableColumn<Map<String, Object>, String> validCol = new TableColumn<>("Valid");
-        validCol.setCellValueFactory(d -> {
-            boolean valid = d.getValue().get("valid") != null && Boolean.parseBoolean(d.getValue().get("valid").toString());
-            return new javafx.beans.property.SimpleStringProperty(valid ? "Yes" : "No");
-        });
+        TableColumn<Integer, String> validCol = new TableColumn<>("Valid");
+        validCol.setCellValueFactory(d -> new SimpleStringProperty(cacheCell(d.getValue(), 1)));
         validCol.setPrefWidth(50);
         
         // Tag column
-        TableColumn<Map<String, Object>, String> tagCol = new TableColumn<>("Tag");
-        tagCol.setCellValueFactory(d -> {
-            Object tag = d.getValue().get("tag");
-            return new javafx.beans.property.SimpleStringProperty(
-                tag != null && !tag.toString().equals("-1") ? tag.toString() : "---");
-        });
+        TableColumn<Integer, String> tagCol = new TableColumn<>("Tag");
+        tagCol.setCellValueFactory(d -> new SimpleStringProperty(cacheCell(d.getValue(), 2)));
         tagCol.setPrefWidth(60);
         
         // Address range column
-        TableColumn<Map<String, Object>, String> addrCol = new TableColumn<>("Address Range");
-        addrCol.setCellValueFactory(d -> {
-            Object base = d.getValue().get("baseAddr");
-            Object end = d.getValue().get("endAddr");
-            if (base != null && !base.toString().equals("-1")) {
-                return new javafx.beans.property.SimpleStringProperty(
-                    base.toString() + "-" + end.toString());
-            }
-            return new javafx.beans.property.SimpleStringProperty("---");
-        });
+        TableColumn<Integer, String> addrCol = new TableColumn<>("Address Range");
+        addrCol.setCellValueFactory(d -> new SimpleStringProperty(cacheCell(d.getValue(), 3)));
         addrCol.setPrefWidth(120);
         
         // Data sample column
-        TableColumn<Map<String, Object>, String> dataCol = new TableColumn<>("Data (hex)");
-        dataCol.setCellValueFactory(d -> new javafx.beans.property.SimpleStringProperty(
-            d.getValue().get("data") != null ? d.getValue().get("data").toString() : "---"));
+        TableColumn<Integer, String> dataCol = new TableColumn<>("Data (hex)");
+        dataCol.setCellValueFactory(d -> new SimpleStringProperty(cacheCell(d.getValue(), 4)));
         dataCol.setPrefWidth(100);
         
         cacheTable.getColumns().addAll(indexCol, validCol, tagCol, addrCol, dataCol);
         
-        section.getChildren().addAll(titleLabel, cacheTable);
+        HBox search = createAddressSearch(addr -> {
+            int line = engine.cache.lineIndexOf(addr);
+            cacheTable.scrollTo(line);
+            cacheTable.getSelectionModel().clearAndSelect(line);
+        });
+        
+        section.getChildren().addAll(titleLabel, search, cacheTable);
         return section;
     }
     
     private VBox createMemorySection() {
         VBox section = new VBox(8);
-        Label titleLabel = new Label("Memory (Non-Zero)");
+        Label titleLabel = new Label("Memory");
         titleLabel.setFont(Font.font("Arial", FontWeight.BOLD, 14));
         titleLabel.setTextFill(Color.DARKBLUE);
         
-        // Create memory table
+        // Create memory table; rows are indices into either the non-zero word list
+        // or every word of every allocated page
         memoryTable.setPrefHeight(500);
         memoryTable.setMaxHeight(500);
         memoryTable.setPrefWidth(350);
         
         // Address column
-        TableColumn<Map<String, Object>, String> addrCol = new TableColumn<>("Address");
-        addrCol.setCellValueFactory(d -> new javafx.beans.property.SimpleStringProperty(
-            d.getValue().get("address") != null ? d.getValue().get("address").toString() : ""));
+        TableColumn<Integer, String> addrCol = new TableColumn<>("Address");
+        addrCol.setCellValueFactory(d -> new SimpleStringProperty(memoryCell(d.getValue(), 0)));
         addrCol.setPrefWidth(80);
         
         // Value column (decimal)
-        TableColumn<Map<String, Object>, String> valueCol = new TableColumn<>("Value (Dec)");
-        valueCol.setCellValueFactory(d -> new javafx.beans.property.SimpleStringProperty(
-            d.getValue().get("value") != null ? d.getValue().get("value").toString() : ""));
+        TableColumn<Integer, String> valueCol = new TableColumn<>("Value (Dec)");
+        valueCol.setCellValueFactory(d -> new SimpleStringProperty(memoryCell(d.getValue(), 1)));
         valueCol.setPrefWidth(100);
         
         // Value column (hex)
-        TableColumn<Map<String, Object>, String> hexCol = new TableColumn<>("Value (Hex)");
-        hexCol.setCellValueFactory(d -> {
-            Object val = d.getValue().get("value");
-            if (val != null) {
-                try {
-                    int value = Integer.parseInt(val.toString());
-                    return new javafx.beans.property.SimpleStringProperty(String.format("0x%08X", value));
-                } catch (NumberFormatException e) {
-                    return new javafx.beans.property.SimpleStringProperty("---");
-                }
-            }
-            return new javafx.beans.property.SimpleStringProperty("---");
-        });
+        TableColumn<Integer, String> hexCol = new TableColumn<>("Value (Hex)");
+        hexCol.setCellValueFactory(d -> new SimpleStringProperty(memoryCell(d.getValue(), 2)));
         hexCol.setPrefWidth(120);
         
         memoryTable.getColumns().addAll(addrCol, valueCol, hexCol);
         
-        section.getChildren().addAll(titleLabel, memoryTable);
+        nonZeroOnly.setSelected(true);
+        nonZeroOnly.setOnAction(e -> {
+            synchronized (engine) {
+                rebuildMemoryRows();
+            }
+        });
+        
+        HBox search = createAddressSearch(addr -> {
+            int row;
+            synchronized (engine) {
+                if (nonZeroOnly.isSelected()) {
+                    // Nearest non-zero word at or after the address
+                    int pos = Arrays.binarySearch(nonZeroWords, (addr / 4) * 4);
+                    row = Math.min(pos >= 0 ? pos : -pos - 1, nonZeroWords.length - 1);
+                } else {
+                    row = engine.cache.getMemory().rowOf(addr);
+                }
+            }
+            if (row < 0) {
+                log("Address " + addr + " is not in the memory image");
+                return;
+            }
+            memoryTable.scrollTo(row);
+            memoryTable.getSelectionModel().clearAndSelect(row);
+        });
+        search.getChildren().add(nonZeroOnly);
+        
+        section.getChildren().addAll(titleLabel, search, memoryTable);
         return section;
     }
     
+    private HBox createAddressSearch(IntConsumer onGo) {
+        HBox box = new HBox(5);
+        box.setAlignment(Pos.CENTER_LEFT);
+        TextField field = new TextField();
+        field.setPromptText("Address (dec or 0x)");
+        field.setPrefWidth(130);
+        Button go = new Button("Go");
+        Runnable action = () -> {
+            try {
+                String text = field.getText().trim().toLowerCase();
+                onGo.accept(text.startsWith("0x") ? (int) Long.parseLong(text.substring(2), 16) : Integer.parseInt(text));
+            } catch (NumberFormatException ex) {
+                log("Invalid address: " + field.getText());
+            }
+        };
+        go.setOnAction(e -> action.run());
+        field.setOnAction(e -> action.run());
+        box.getChildren().addAll(field, go);
+        return box;
+    }
+    
+    // Cell text for one cache line; called by the table only for visible rows
+    private String cacheCell(int line, int col) {
+        synchronized (engine) {
+            MemoryCache cache = engine.cache;
+            if (line >= cache.getLines()) return "";
+            boolean valid = cache.isLineValid(line);
+            switch (col) {
+                case 1: return valid ? "Yes" : "No";
+                case 2: return valid ? String.valueOf(cache.getLineTag(line)) : "---";
+                case 3:
+                    if (!valid) return "---";
+                    int base = cache.getLineBaseAddress(line);
+                    return base + "-" + (base + cache.getBlockSize() - 1);
+                default:
+                    if (!valid) return "---";
+                    // First few bytes as sample data
+                    StringBuilder data = new StringBuilder();
+                    int b = cache.getLineBaseAddress(line);
+                    for (int j = 0; j < Math.min(4, cache.getBlockSize()); j++) {
+                        if (j > 0) data.append(' ');
+                        data.append(String.format("%02X", cache.getMemory().readByte(b + j)));
+                    }
+                    return data.toString();
+            }
+        }
+    }
+    
+    // Cell text for one memory row; called by the table only for visible rows
+    private String memoryCell(int row, int col) {
+        synchronized (engine) {
+            MainMemory mem = engine.cache.getMemory();
+            int addr;
+            if (nonZeroOnly.isSelected()) {
+                if (row >= nonZeroWords.length) return "";
+                addr = nonZeroWords[row];
+            } else {
+                if (row >= mem.getWordCount()) return "";
+                addr = mem.wordAddressAt(row);
+            }
+            if (col == 0) return String.valueOf(addr);
+            int value = mem.readWord(addr);
+            return col == 1 ? String.valueOf(value) : String.format("0x%08X", value);
+        }
+    }
+    
+    // Virtual list of row indices 0..n-1; no per-row objects are kept
+    private static ObservableList<Integer> indexList(int n) {
+        return FXCollections.observableList(new AbstractList<Integer>() {
+            @Override
+            public Integer get(int i) { return i; }
+            @Override
+            public int size() { return n; }
+        });
+    }
+    
+    private void rebuildMemoryRows() {
+        MainMemory mem = engine.cache.getMemory();
+        if (nonZeroOnly.isSelected()) {
+            nonZeroWords = mem.nonZeroWordAddresses();
+            memoryTable.setItems(indexList(nonZeroWords.length));
+        } else {
+            memoryTable.setItems(indexList(mem.getWordCount()));
+        }
+    }
+    
+    // Changed words only need a repaint of the visible rows unless the row set itself changed
+    private void patchMemory(Set<Integer> words) {
+        if (words.isEmpty()) return;
+        MainMemory mem = engine.cache.getMemory();
+        boolean rowsChanged;
+        if (nonZeroOnly.isSelected()) {
+            rowsChanged = false;
+            for (int addr : words) {
+                boolean listed = Arrays.binarySearch(nonZeroWords, addr) >= 0;
+                if (listed != (mem.readWord(addr) != 0)) {
+                    rowsChanged = true;
+                    break;
+                }
+            }
+        } else {
+            rowsChanged = memoryTable.getItems().size() != mem.getWordCount();
+        }
+        if (rowsChanged) rebuildMemoryRows();
+        else memoryTable.refresh();
+    }
+    
     private void applyConfig() {
         try {
             cfg.addLatency = Integer.parseInt(addLatencyField.getText());
@@ -585,6 +903,9 @@ public class MainApp extends Application {
             cfg.loadLatency = Integer.parseInt(loadLatencyField.getText());
             cfg.storeLatency = Integer.parseInt(storeLatencyField.getText());
             cfg.intLatency = Integer.parseInt(intLatencyField.getText());
+            cfg.mulInterval = Integer.parseInt(mulIntervalField.getText());
+            cfg.divUnits = Integer.parseInt(divUnitsField.getText());
+            cfg.divEarlyOut = divEarlyOutBox.isSelected();
             cfg.cacheSizeBytes = Integer.parseInt(cacheSizeField.getText());
             cfg.blockSizeBytes = Integer.parseInt(blockSizeField.getText());
             cfg.cacheHitLatency = Integer.parseInt(hitLatencyField.getText());
@@ -593,269 +914,432 @@ public class MainApp extends Application {
             cfg.numMulStations = Integer.parseInt(mulStationsField.getText());
             cfg.numIntStations = Integer.parseInt(intStationsField.getText());
             cfg.numLoadBuffers = Integer.parseInt(loadBuffersField.getText());
+            cfg.windowSize = Integer.parseInt(windowSizeField.getText());
+            cfg.addUnits = Integer.parseInt(addUnitsField.getText());
+            cfg.mulUnits = Integer.parseInt(mulUnitsField.getText());
+            cfg.intUnits = Integer.parseInt(intUnitsField.getText());
+            cfg.selectPolicy = selectPolicyBox.getValue();
+            cfg.issueWidth = Integer.parseInt(issueWidthField.getText());
+            cfg.cdbWidth = Integer.parseInt(cdbWidthField.getText());
+            cfg.regReadPorts = Integer.parseInt(readPortsField.getText());
+            cfg.regWritePorts = Integer.parseInt(writePortsField.getText());
+            cfg.renameWidth = Integer.parseInt(renameWidthField.getText());
+            cfg.fetchWidth = Integer.parseInt(fetchWidthField.getText());
+            cfg.decodeQueueSize = Integer.parseInt(decodeQueueField.getText());
+            cfg.icacheSizeBytes = Integer.parseInt(icacheSizeField.getText());
+            cfg.icacheBlockSize = Integer.parseInt(icacheBlockField.getText());
+            cfg.icacheAssoc = Integer.parseInt(icacheAssocField.getText());
+            cfg.icacheMissPenalty = Integer.parseInt(icacheMissField.getText());
+            cfg.dramChannels = Integer.parseInt(dramChannelsField.getText());
+            cfg.dramBanks = Integer.parseInt(dramBanksField.getText());
+            cfg.dramTRCD = Integer.parseInt(dramTRCDField.getText());
+            cfg.dramTCAS = Integer.parseInt(dramTCASField.getText());
+            cfg.dramTRP = Integer.parseInt(dramTRPField.getText());
+            cfg.dramBurstCycles = Integer.parseInt(dramBurstField.getText());
+            cfg.tlbEntries = Integer.parseInt(tlbEntriesField.getText());
+            cfg.tlbAssoc = Integer.parseInt(tlbAssocField.getText());
+            cfg.pageSizeBytes = Integer.parseInt(pageSizeField.getText());
+            cfg.pageWalkLevels = Integer.parseInt(walkLevelsField.getText());
+            cfg.pageWalkLatency = Integer.parseInt(walkLatencyField.getText());
+            cfg.pageWalkCached = walkCachedBox.isSelected();
+            int phys = Integer.parseInt(physRegsField.getText());
+            if (phys != 0 && phys <= PhysicalRegisterFile.ARCH_REGS) {
+                log("Physical registers must exceed " + PhysicalRegisterFile.ARCH_REGS + "; keeping " + cfg.physRegs);
+            } else {
+                cfg.physRegs = phys;
+            }
         } catch (NumberFormatException ex) {
             log("Invalid config value: " + ex.getMessage());
         }
     }
 
     private void loadFromFile(File f) {
+        if (isBinary(f)) {
+            try {
+                List<Instruction> ins = BinaryTraceReader.readProgram(f.toPath());
+                closeTrace();
+                engine.loadInstructions(ins);
+                log("Loaded " + ins.size() + " instructions from " + f.getName());
+            } catch (Exception ex) {
+                log("Error loading file: " + ex.getMessage());
+            }
+            return;
+        }
         try (BufferedReader br = new BufferedReader(new FileReader(f))) {
             List<String> lines = new ArrayList<>();
-            Map<String, Integer> labels = new HashMap<>();
             String line;
-            
-            // First pass: collect lines and build label map
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) continue;
-                
-                // Check for label
-                if (line.contains(":")) {
-                    String label = line.substring(0, line.indexOf(':')).trim();
-                    labels.put(label, lines.size()); // Map label to instruction index
+            while ((line = br.readLine()) != null) lines.add(line);
+
+            List<String> errors = new ArrayList<>();
+            List<Instruction> ins = InstructionParser.parseProgram(lines, errors);
+
+            closeTrace();
+            synchronized (engine) {
+                // Report errors in one batch; a huge broken file must not refresh the UI per line
+                for (String err : errors.subList(0, Math.min(errors.size(), MAX_PARSE_ERRORS))) engine.history.add(err);
+                if (errors.size() > MAX_PARSE_ERRORS) {
+                    engine.history.add("... " + (errors.size() - MAX_PARSE_ERRORS) + " more lines failed to parse");
                 }
-                lines.add(line);
-            }
-            
-            // Second pass: parse instructions with label resolution
-            List<Instruction> ins = new ArrayList<>();
-            for (int i = 0; i < lines.size(); i++) {
-                Instruction parsed = parse(lines.get(i), labels, i);
-                if (parsed != null) ins.add(parsed);
+                engine.loadInstructions(ins);
             }
-            
-            engine.loadInstructions(ins);
             log("Loaded " + ins.size() + " instructions from " + f.getName());
-            refreshUI();
         } catch (Exception ex) {
             ex.printStackTrace();
             log("Error loading file: " + ex.getMessage());
         }
     }
 
-    private Instruction parse(String line, Map<String, Integer> labels, int currentIndex) {
-        // very simple parser for forms like: L.D F6, 0(R2)
+    // Stream a dynamic trace into the engine. A restored trace-driven checkpoint resumes where it left off.
+    private void loadTrace(File f) {
         try {
-            String raw = line;
-            
-            // Strip label if present (e.g., "LOOP: L.D F0, 8(R1)")
-            if (line.contains(":")) {
-                line = line.substring(line.indexOf(':') + 1).trim();
-            }
-            
-            String op = line.split("\\s+")[0].replaceAll("\\.", "_").toUpperCase();
-            String rest = line.substring(line.indexOf(' ') + 1).trim();
-            String[] parts = rest.split(",");
-            InstructionType type = InstructionType.valueOf(op);
-            switch (type) {
-                case LD: case LW: case L_D: case L_S:
-                    String dest = parts[0].trim();
-                    String addr = parts[1].trim();
-                    // form: offset(Rx)
-                    int p = addr.indexOf('(');
-                    int imm = Integer.parseInt(addr.substring(0, p).trim());
-                    String base = addr.substring(p + 1, addr.indexOf(')')).trim();
-                    return new Instruction(type, dest, base, null, imm, raw);
-                case SD: case SW: case S_S: case S_D: case S_W:
-                    // src, offset(Rx)
-                    String src = parts[0].trim();
-                    String addr2 = parts[1].trim();
-                    int p2 = addr2.indexOf('(');
-                    int imm2 = Integer.parseInt(addr2.substring(0, p2).trim());
-                    String base2 = addr2.substring(p2 + 1, addr2.indexOf(')')).trim();
-                    return new Instruction(type, null, base2, src, imm2, raw);
-                case ADD: case SUB: case MUL: case DIV:
-                case ADD_D: case SUB_D: case MUL_D: case DIV_D:
-                case ADD_S: case SUB_S: case MUL_S: case DIV_S:
-                    // dest, src1, src2
-                    String d = parts[0].trim();
-                    String s1 = parts[1].trim();
-                    String s2 = parts[2].trim();
-                    return new Instruction(type, d, s1, s2, null, raw);
-                case ADDI: case SUBI: case DADDI: case DSUBI:
-                    // dest, src, imm
-                    String dd = parts[0].trim();
-                    String ss = parts[1].trim();
-                    int imm3 = Integer.parseInt(parts[2].trim());
-                    return new Instruction(type, dd, ss, null, imm3, raw);
-                case BEQ: case BNE:
-                    // BEQ R1, R2, offset or BEQ R1, R2, LABEL
-                    String bb0 = parts[0].trim();
-                    String bb1 = parts[1].trim();
-                    String offsetStr = parts[2].trim();
-                    int off;
-                    
-                    // Check if it's a label or numeric offset
-                    if (labels.containsKey(offsetStr)) {
-                        // Calculate relative offset: target - (current + 1)
-                        off = labels.get(offsetStr) - (currentIndex + 1);
-                    } else {
-                        // Direct numeric offset
-                        off = Integer.parseInt(offsetStr);
-                    }
-                    
-                    return new Instruction(type, null, bb0, bb1, off, raw);
-                default:
-                    return new Instruction(type, null, null, null, null, raw);
+            boolean resume = engine.isTraceMode() && traceReader == null && engine.getTraceConsumed() > 0;
+            closeTrace();
+            traceReader = isBinary(f) ? BinaryTraceReader.open(f.toPath()) : TraceReader.open(f.toPath());
+            if (resume) {
+                traceReader.skip(engine.getTraceConsumed());
+                engine.resumeTrace(traceReader);
+                log("Resumed trace " + f.getName() + " after " + engine.getTraceConsumed() + " instructions");
+            } else {
+                engine.loadTrace(traceReader);
+                log("Streaming trace " + f.getName());
             }
+            refreshUI();
         } catch (Exception ex) {
-            log("Failed parsing line: " + line + " -> " + ex.getMessage());
-            return null;
+            log("Error loading trace: " + ex.getMessage());
+        }
+    }
+
+    private boolean isBinary(File f) {
+        try {
+            return BinaryTraceReader.isBinary(f.toPath());
+        } catch (java.io.IOException ex) {
+            return false;
         }
     }
 
+    private void closeTrace() {
+        if (traceReader == null) return;
+        if (traceReader instanceof TraceReader && ((TraceReader) traceReader).getBadLines() > 0) {
+            TraceReader r = (TraceReader) traceReader;
+            log("Trace had " + r.getBadLines() + " unparsable lines, first at " + r.getFirstError());
+        }
+        try {
+            traceReader.close();
+        } catch (java.io.IOException ignored) {
+        }
+        traceReader = null;
+    }
+
+    private void startRun() {
+        double rate;
+        Breakpoint bp;
+        try {
+            rate = rateField.getText().trim().isEmpty() ? 0 : Double.parseDouble(rateField.getText().trim());
+            bp = parseBreakpoint();
+        } catch (RuntimeException ex) {
+            log("Invalid run settings: " + ex.getMessage());
+            return;
+        }
+        runner = new SimulationRunner(engine);
+        runBtn.setText("Pause");
+        for (Node n : stepControls) n.setDisable(true);
+        renderTimer.start();
+        runner.start(rate, bp, reason -> Platform.runLater(() -> {
+            renderTimer.stop();
+            runBtn.setText("Run");
+            for (Node n : stepControls) n.setDisable(false);
+            log(reason);
+        }));
+    }
+    
+    private Breakpoint parseBreakpoint() {
+        String arg = breakField.getText().trim();
+        switch (breakKind.getValue()) {
+            case "Cycle": return Breakpoint.atCycle(Long.parseLong(arg));
+            case "PC": return Breakpoint.atPc(Integer.parseInt(arg));
+            case "Register":
+                // form: F4=75
+                int eq = arg.indexOf('=');
+                if (eq < 0) throw new IllegalArgumentException("register breakpoint must look like F4=75");
+                return Breakpoint.registerEquals(arg.substring(0, eq).trim().toUpperCase(),
+                    Double.parseDouble(arg.substring(eq + 1).trim()));
+            case "Cache miss": return Breakpoint.cacheMiss();
+            default: return null;
+        }
+    }
+
+    // May be called while a worker thread is stepping the engine, so hold its monitor
     private void refreshUI() {
-        Map<String, Object> snapshot = engine.snapshot();
+        synchronized (engine) {
+            refreshViews();
+        }
+    }
+
+    private void refreshViews() {
+        // A new engine (reset, config change, checkpoint) gets freshly built views
+        if (renderedEngine != engine) rebuildViews();
+        ChangeSet changes = engine.drainChanges();
         
         // Update cycle label
-        cycleLabel.setText("Cycle: " + snapshot.get("cycle"));
+        cycleLabel.setText("Cycle: " + engine.cycle);
         
         // Update cache statistics
         cacheStatsLabel.setText(String.format("Cache: Hits=%d Misses=%d", 
             engine.cache.getHits(), engine.cache.getMisses()));
+        if (countersPane.isExpanded()) {
+            DramController dram = engine.cache.getDram();
+            countersLabel.setText(engine.counters.report() + (dram == null ? "" : "\n" + dram.report()));
+        }
         
         // Update instruction queue
-        instrTable.setItems(FXCollections.observableArrayList());
-        @SuppressWarnings("unchecked")
-        List<Instruction> queue = (List<Instruction>) snapshot.get("instrQueue");
-        for (Instruction inst : queue) {
-            instrTable.getItems().add(inst.toString());
-        }
-        
-        // Update reservation stations - populate boxes
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> addList = (List<Map<String, Object>>) snapshot.get("addStations");
-        addStationsBox.getChildren().clear();
-        for (Map<String, Object> station : addList) {
-            addStationsBox.getChildren().add(createStationBox(station));
-        }
-        
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> mulList = (List<Map<String, Object>>) snapshot.get("mulStations");
-        mulStationsBox.getChildren().clear();
-        for (Map<String, Object> station : mulList) {
-            mulStationsBox.getChildren().add(createStationBox(station));
-        }
-        
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> intList = (List<Map<String, Object>>) snapshot.get("intStations");
-        intStationsBox.getChildren().clear();
-        for (Map<String, Object> station : intList) {
-            intStationsBox.getChildren().add(createStationBox(station));
-        }
-        
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> loadList = (List<Map<String, Object>>) snapshot.get("loadBuffers");
-        loadStationsBox.getChildren().clear();
-        for (Map<String, Object> station : loadList) {
-            loadStationsBox.getChildren().add(createStationBox(station));
-        }
-        
-        // Update cache table
-        List<Map<String, Object>> cacheState = engine.cache.getCacheState();
-        cacheTable.setItems(FXCollections.observableArrayList(cacheState));
-        
-        // Update memory table (show non-zero words only)
-        List<Map<String, Object>> memoryState = engine.cache.getMemoryState();
-        memoryTable.setItems(FXCollections.observableArrayList(memoryState));
-        
-        // Update finish cycle table - keep history of all instructions
-        int currentCycle = engine.cycle;
-        
-        // Collect all busy stations
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> allStations = new ArrayList<>();
-        allStations.addAll(addList);
-        allStations.addAll(mulList);
-        allStations.addAll(intList);
-        allStations.addAll(loadList);
-        
-        // Update history with current busy stations
-        for (Map<String, Object> station : allStations) {
-            boolean busy = station.get("busy") != null && Boolean.parseBoolean(station.get("busy").toString());
-            String stationName = station.get("name") != null ? station.get("name").toString() : "";
-            
-            if (busy && station.get("inst") != null) {
-                // Update or add instruction to history
-                Map<String, Object> finishInfo = instructionHistory.getOrDefault(stationName, new HashMap<>());
-                finishInfo.put("station", stationName);
-                finishInfo.put("instruction", station.get("inst"));
-                finishInfo.put("status", "Executing");
-                
-                // Calculate finish cycle: current cycle + remaining cycles
-                Object remObj = station.get("remaining");
-                if (remObj != null) {
-                    try {
-                        int remaining = Integer.parseInt(remObj.toString());
-                        int finishCycle = currentCycle + remaining;
-                        finishInfo.put("finishCycle", finishCycle);
-                    } catch (NumberFormatException e) {
-                        finishInfo.put("finishCycle", "---");
-                    }
-                } else {
-                    finishInfo.put("finishCycle", "---");
-                }
-                instructionHistory.put(stationName, finishInfo);
-            } else if (!busy && instructionHistory.containsKey(stationName)) {
-                // Station just finished - mark as completed
-                Map<String, Object> finishInfo = instructionHistory.get(stationName);
-                if (!"Completed".equals(finishInfo.get("status"))) {
-                    // Mark as completed, keep the finish cycle from when it finished
-                    finishInfo.put("status", "Completed");
-                    // If we have a finish cycle, keep it; otherwise set to current cycle
-                    if (finishInfo.get("finishCycle") == null || "---".equals(finishInfo.get("finishCycle"))) {
-                        finishInfo.put("finishCycle", currentCycle);
-                    }
-                }
-            }
+        if (changes.queueChanged) patchQueue();
+        
+        // Update reservation stations that changed
+        for (String name : changes.stations) {
+            stationRows.get(name).update(stationsByName.get(name));
         }
         
-        // Convert history to list for display (sorted by station name)
-        List<Map<String, Object>> finishCycles = new ArrayList<>(instructionHistory.values());
-        finishCycles.sort((a, b) -> {
-            String nameA = a.get("station") != null ? a.get("station").toString() : "";
-            String nameB = b.get("station") != null ? b.get("station").toString() : "";
-            return nameA.compareTo(nameB);
-        });
+        patchTiming();
         
-        // Update finish times display with styled rows
-        finishTimesBox.getChildren().clear();
-        for (Map<String, Object> finishData : finishCycles) {
-            finishTimesBox.getChildren().add(createFinishTimeRow(finishData));
+        // Update registers
+        for (String name : changes.registers) {
+            RegisterRow row = registerRows.get(name);
+            if (row != null) row.update(engine.registers);
         }
         
-        // Update registers (show all 32 of each type)
-        @SuppressWarnings("unchecked")
-        Map<String, Integer> regs = (Map<String, Integer>) snapshot.get("registers");
-        @SuppressWarnings("unchecked")
-        Map<String, String> regTags = (Map<String, String>) snapshot.get("registerTags");
-        List<Map.Entry<String, Integer>> regList = new ArrayList<>();
-        for (int i = 0; i < 32; i++) {
-            String rName = "R" + i;
-            if (regs.containsKey(rName)) regList.add(new java.util.AbstractMap.SimpleEntry<>(rName, regs.get(rName)));
-        }
-        for (int i = 0; i < 32; i++) {
-            String fName = "F" + i;
-            if (regs.containsKey(fName)) regList.add(new java.util.AbstractMap.SimpleEntry<>(fName, regs.get(fName)));
+        // Update cache lines (repaints only the visible rows)
+        if (!changes.cacheLines.isEmpty()) cacheTable.refresh();
+        
+        // Update memory table
+        patchMemory(changes.memoryWords);
+        
+        appendLog();
+    }
+
+    // Build every view from scratch for the current engine
+    private void rebuildViews() {
+        renderedEngine = engine;
+        engine.drainChanges(); // everything is rendered below
+        
+        instrTable.setItems(FXCollections.observableArrayList(engine.instrQueue));
+        
+        stationRows.clear();
+        stationsByName.clear();
+        boolean window = !engine.windowStations.isEmpty();
+        addSectionTitle.setText(window ? "Issue Window" : "Add/Sub Stations");
+        buildStationRows(window ? engine.windowStations : engine.addStations, addStationsBox);
+        buildStationRows(engine.mulStations, mulStationsBox);
+        buildStationRows(engine.intStations, intStationsBox);
+        buildStationRows(engine.loadBuffers, loadStationsBox);
+        
+        openTimingRows.clear();
+        finishTimesBox.getChildren().clear();
+        traceShown = Math.max(engine.trace.first(), engine.trace.end() - MAX_TIMING_ROWS);
+        patchTiming();
+        
+        // Registers (show all 32 of each type)
+        registerRows.clear();
+        List<RegisterRow> regList = new ArrayList<>();
+        for (String prefix : new String[] {"R", "F"}) {
+            for (int i = 0; i < 32; i++) {
+                String name = prefix + i;
+                if (!RegisterFile.isFp(name) && !engine.registers.regs.containsKey(name)) continue;
+                RegisterRow row = new RegisterRow(name);
+                row.update(engine.registers);
+                registerRows.put(name, row);
+                regList.add(row);
+            }
         }
         registerTable.setItems(FXCollections.observableArrayList(regList));
-        registerTable.refresh(); // Force refresh to update tag column
         
-        // Update log
+        cacheTable.setItems(indexList(engine.cache.getLines()));
+        rebuildMemoryRows();
+        
         logArea.clear();
-        int start = Math.max(0, engine.history.size() - 50); // last 50 lines
-        for (int i = start; i < engine.history.size(); i++) {
-            logArea.appendText(engine.history.get(i) + "\n");
+        logLineLengths.clear();
+        logShown = engine.getHistoryDropped() + Math.max(0, engine.history.size() - LOG_LINES);
+    }
+    
+    private void buildStationRows(List<ReservationStation> pool, VBox container) {
+        container.getChildren().clear();
+        for (ReservationStation rs : pool) {
+            StationRow row = new StationRow(rs.name);
+            row.update(rs);
+            stationRows.put(rs.name, row);
+            stationsByName.put(rs.name, rs);
+            container.getChildren().add(row.box);
         }
+    }
+    
+    // Append rows for new trace records and update the ones still in flight
+    private void patchTiming() {
+        PipelineTrace trace = engine.trace;
+        long end = trace.end();
+        for (long id = Math.max(Math.max(traceShown, trace.first()), end - MAX_TIMING_ROWS); id < end; id++) {
+            TimingRow row = new TimingRow(trace.getStation(id), trace.getText(id));
+            finishTimesBox.getChildren().add(row.box);
+            openTimingRows.put(id, row);
+        }
+        traceShown = end;
+        openTimingRows.entrySet().removeIf(e -> e.getValue().update(trace, e.getKey()));
+        int excess = finishTimesBox.getChildren().size() - MAX_TIMING_ROWS;
+        if (excess > 0) finishTimesBox.getChildren().remove(0, excess);
+    }
+    
+    // The queue only ever loses its head (issue) or is reloaded (branch, new program)
+    private void patchQueue() {
+        ObservableList<Instruction> shown = instrTable.getItems();
+        List<Instruction> queue = engine.instrQueue;
+        int drop = shown.size() - queue.size();
+        boolean isSuffix = drop >= 0 && (queue.isEmpty()
+            || (shown.get(drop) == queue.get(0) && shown.get(shown.size() - 1) == queue.get(queue.size() - 1)));
+        if (isSuffix) {
+            if (drop > 0) shown.remove(0, drop);
+        } else {
+            shown.setAll(queue);
+        }
+    }
+    
+    // Append new history entries, keeping only the last LOG_LINES lines in the log area
+    private void appendLog() {
+        // logShown counts logical entries; the engine may have trimmed the front of history
+        long base = engine.getHistoryDropped();
+        long size = base + engine.history.size();
+        if (logShown >= size) return;
+        if (size - logShown >= LOG_LINES) {
+            logArea.clear();
+            logLineLengths.clear();
+            logShown = size - LOG_LINES;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (long i = logShown; i < size; i++) {
+            String line = engine.history.get((int) (i - base));
+            sb.append(line).append('\n');
+            logLineLengths.addLast(line.length() + 1);
+        }
+        logArea.appendText(sb.toString());
+        int trim = 0;
+        while (logLineLengths.size() > LOG_LINES) trim += logLineLengths.removeFirst();
+        if (trim > 0) logArea.deleteText(0, trim);
+        logShown = size;
         logArea.setScrollTop(Double.MAX_VALUE);
     }
 
     private void log(String s) {
-        engine.history.add(s);
+        synchronized (engine) {
+            engine.history.add(s);
+        }
         refreshUI();
     }
 
     public static void main(String[] args) {
         launch(args);
     }
-}
\ No newline at end of file
+
+    // One reservation station row; labels are built once and patched in place
+    private static class StationRow {
+        private static final int[] COL_WIDTHS = {60, 50, 70, 60, 60, 60, 60, 50};
+        final HBox box = new HBox(0);
+        final Label[] cells = new Label[COL_WIDTHS.length];
+
+        StationRow(String name) {
+            box.setPadding(new Insets(5));
+            box.setStyle("-fx-background-color: #F5F5F5; -fx-border-color: #999; -fx-border-width: 1;");
+            // Create cells with borders for each column
+            for (int i = 0; i < cells.length; i++) {
+                VBox cell = new VBox();
+                cell.setPrefWidth(COL_WIDTHS[i]);
+                cell.setAlignment(Pos.CENTER);
+                cell.setStyle("-fx-border-color: #999; -fx-border-width: 0 1 0 0; -fx-padding: 5;");
+                Label label = new Label();
+                if (i == 0) { // Name column
+                    label.setFont(Font.font("Arial", FontWeight.BOLD, 11));
+                } else {
+                    label.setFont(Font.font("Arial", 11));
+                }
+                label.setAlignment(Pos.CENTER);
+                cells[i] = label;
+                cell.getChildren().add(label);
+                box.getChildren().add(cell);
+            }
+            cells[0].setText(name);
+        }
+
+        void update(ReservationStation rs) {
+            String inst = rs.inst != null ? rs.inst.toString() : "";
+            String qj = rs.qj != null ? rs.qj : "";
+            String qk = rs.qk != null ? rs.qk : "";
+            // Extract op from instruction if available
+            String op = "";
+            if (!inst.isEmpty() && inst.contains(" ")) {
+                op = inst.split("\\s+")[0];
+            }
+            cells[1].setText(rs.busy ? "Yes" : "No");
+            cells[1].setTextFill(rs.busy ? Color.RED : Color.BLACK);
+            cells[2].setText(op);
+            cells[3].setText(rs.vj != null ? RegisterFile.formatBits(rs.inst.src1, rs.vj) : "");
+            cells[4].setText(rs.vk != null ? RegisterFile.formatBits(rs.inst.src2, rs.vk) : "");
+            cells[5].setText(qj);
+            cells[5].setTextFill(!qj.isEmpty() ? Color.BLUE : Color.BLACK);
+            cells[6].setText(qk);
+            cells[6].setTextFill(!qk.isEmpty() ? Color.BLUE : Color.BLACK);
+            cells[7].setText(String.valueOf(rs.remaining));
+        }
+    }
+
+    // One dynamic instruction in the timing panel
+    private static class TimingRow {
+        static final int[] COL_WIDTHS = {60, 150, 50, 80, 50};
+        final HBox box = new HBox(0);
+        final Label[] cells = new Label[COL_WIDTHS.length];
+
+        TimingRow(String station, String instruction) {
+            box.setPadding(new Insets(5));
+            box.setStyle("-fx-background-color: #F5F5F5; -fx-border-color: #999; -fx-border-width: 1;");
+            for (int i = 0; i < cells.length; i++) {
+                VBox cell = new VBox();
+                cell.setPrefWidth(COL_WIDTHS[i]);
+                cell.setAlignment(Pos.CENTER);
+                cell.setStyle("-fx-border-color: #999; -fx-border-width: 0 1 0 0; -fx-padding: 5;");
+                Label label = new Label();
+                if (i == 0) { // Station column
+                    label.setFont(Font.font("Arial", FontWeight.BOLD, 11));
+                } else {
+                    label.setFont(Font.font("Arial", 11));
+                }
+                label.setAlignment(Pos.CENTER);
+                cells[i] = label;
+                cell.getChildren().add(label);
+                box.getChildren().add(cell);
+            }
+            cells[0].setText(station);
+            cells[1].setText(instruction);
+        }
+
+        // Returns true once the instruction has written back and the row is final
+        boolean update(PipelineTrace trace, long id) {
+            long start = trace.getExecStart(id), end = trace.getExecEnd(id), wb = trace.getWriteback(id);
+            cells[2].setText(String.valueOf(trace.getIssue(id)));
+            cells[3].setText(start < 0 ? "---" : start + "-" + (end < 0 ? "" : String.valueOf(end)));
+            cells[4].setText(wb < 0 ? "---" : String.valueOf(wb));
+            cells[4].setTextFill(wb < 0 ? Color.ORANGE : Color.GREEN);
+            return wb >= 0;
+        }
+    }
+
+    private static class RegisterRow {
+        final String name;
+        final SimpleStringProperty value = new SimpleStringProperty();
+        final SimpleStringProperty tag = new SimpleStringProperty();
+
+        RegisterRow(String name) {
+            this.name = name;
+        }
+
+        void update(RegisterFile rf) {
+            value.set(rf.format(name));
+            String t = rf.getTag(name);
+            tag.set(t != null ? t : "");
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.tomasulo;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Sparse byte-addressable main memory held as 4 KiB pages of primitive bytes.
+// Pages are allocated on first write or block fill; untouched addresses read as 0.
+// Concurrent readers are safe while nobody writes (multicore cores read it in parallel between barriers).
+public class MainMemory {
+    public static final int PAGE_BITS = 12;
+    public static final int PAGE_SIZE = 1 << PAGE_BITS;
+    public static final int WORDS_PER_PAGE = PAGE_SIZE / 4;
+
+    private final TreeMap<Integer, byte[]> pages = new TreeMap<>();
+    // One-entry lookup cache for the most recently used page, replaced as a whole so that
+    // concurrent readers never see a page number paired with another page
+    private static final class LastPage {
+        final int no;
+        final byte[] data;
+
+        LastPage(int no, byte[] data) {
+            this.no = no;
+            this.data = data;
+        }
+    }
+    private static final LastPage NO_PAGE = new LastPage(Integer.MIN_VALUE, null);
+    private LastPage last = NO_PAGE;
+    // Sorted page numbers for indexed (row -> address) access; rebuilt when pages are added
+    private int[] sortedPages = new int[0];
+    private boolean pagesChanged = false;
+
+    private static int pageNo(int address) {
+        return address >> PAGE_BITS; // arithmetic shift = floorDiv for negative addresses
+    }
+
+    private static int offset(int address) {
+        return address & (PAGE_SIZE - 1);
+    }
+
+    private byte[] page(int address, boolean create) {
+        int no = pageNo(address);
+        LastPage l = last;
+        if (no == l.no) return l.data;
+        byte[] p = pages.get(no);
+        if (p == null) {
+            if (!create) return null;
+            p = new byte[PAGE_SIZE];
+            pages.put(no, p);
+            pagesChanged = true;
+        }
+        last = new LastPage(no, p);
+        return p;
+    }
+
+    public int readByte(int address) {
+        byte[] p = page(address, false);
+        return p == null ? 0 : p[offset(address)] & 0xFF;
+    }
+
+    public void writeByte(int address, int value) {
+        page(address, true)[offset(address)] = (byte) value;
+    }
+
+    // word = 4 bytes little-endian combined
+    public int readWord(int address) {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            v |= readByte(address + i) << (8 * i);
+        }
+        return v;
+    }
+
+    public void writeWord(int address, int value) {
+        for (int i = 0; i < 4; i++) {
+            writeByte(address + i, (value >> (8 * i)) & 0xFF);
+        }
+    }
+
+    // doubleword = two little-endian words, low word first
+    public long readLong(int address) {
+        return (readWord(address) & 0xFFFFFFFFL) | ((long) readWord(address + 4) << 32);
+    }
+
+    public void writeLong(int address, long value) {
+        writeWord(address, (int) value);
+        writeWord(address + 4, (int) (value >>> 32));
+    }
+
+    // Make sure backing pages exist for [address, address + len) without changing contents
+    public void touch(int address, int len) {
+        for (int a = address; a < address + len; a += PAGE_SIZE - offset(a)) {
+            page(a, true);
+        }
+    }
+
+    public void clear() {
+        pages.clear();
+        last = NO_PAGE;
+        pagesChanged = true;
+    }
+
+    // Independent deep copy (e.g. the initial image for a reference model)
+    public MainMemory copy() {
+        MainMemory m = new MainMemory();
+        for (Map.Entry<Integer, byte[]> e : pages.entrySet()) m.pages.put(e.getKey(), e.getValue().clone());
+        m.pagesChanged = true;
+        return m;
+    }
+
+    // Indexed view over every word of every allocated page, in address order
+    public int getWordCount() {
+        return pages.size() * WORDS_PER_PAGE;
+    }
+
+    public int wordAddressAt(int row) {
+        int[] sp = sortedPages();
+        return (sp[row / WORDS_PER_PAGE] << PAGE_BITS) + (row % WORDS_PER_PAGE) * 4;
+    }
+
+    // Row of the word containing address, or -1 if its page is not allocated
+    public int rowOf(int address) {
+        int i = Arrays.binarySearch(sortedPages(), pageNo(address));
+        if (i < 0) return -1;
+        return i * WORDS_PER_PAGE + offset(address) / 4;
+    }
+
+    // Word-aligned addresses of all non-zero words, in address order
+    public int[] nonZeroWordAddresses() {
+        int n = 0;
+        int[] out = new int[64];
+        for (Map.Entry<Integer, byte[]> e : pages.entrySet()) {
+            byte[] p = e.getValue();
+            int base = e.getKey() << PAGE_BITS;
+            for (int off = 0; off < PAGE_SIZE; off += 4) {
+                if ((p[off] | p[off + 1] | p[off + 2] | p[off + 3]) == 0) continue;
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                out[n++] = base + off;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private int[] sortedPages() {
+        if (pagesChanged || sortedPages.length != pages.size()) {
+            sortedPages = new int[pages.size()];
+            int i = 0;
+            for (int no : pages.keySet()) sortedPages[i++] = no;
+            pagesChanged = false;
+        }
+        return sortedPages;
+    }
+
+    // Checkpoint support: page numbers followed by raw page contents
+    Map<Integer, byte[]> pages() {
+        return pages;
+    }
+
+    void putPage(int pageNo, byte[] data) {
+        pages.put(pageNo, data);
+        pagesChanged = true;
+        if (pageNo == last.no) last = new LastPage(pageNo, data);
+    }
+}
@@ -1,8 +1,13 @@
 package com.tomasulo;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 
 // Very simple direct-mapped cache model for data cache only.
+// In a MulticoreSystem the backing memory is shared and the cache is one of the private L1s on a
+// CoherentBus: lines carry MESI states, and bus requests and stores are held until the cycle barrier.
 public class MemoryCache {
     @SuppressWarnings("unused")
     private final int cacheSizeBytes;
@@ -10,13 +15,38 @@ public class MemoryCache {
     private final int lines;
     private final int hitLatency;
     private final int missPenalty;
-    private final Map<Integer, Integer> memory = new HashMap<>(); // byte address to value
+    private final MainMemory memory; // byte-addressable backing store (shared between cores in multicore mode)
 
     private final CacheLine[] linesArr;
     private int hits = 0;
     private int misses = 0;
 
+    // Lines and memory words touched since the last drainDirty()
+    private final BitSet dirtyLines = new BitSet();
+    private final Set<Integer> dirtyWords = new HashSet<>();
+
+    // Multicore only (see CoherentBus); bus is null for a single core
+    private CoherentBus bus;
+    private int core;
+    final List<CoherentBus.Request> requests = new ArrayList<>(); // this cycle's bus requests
+    private int lastAccessStart = 0;                               // first request of the last access()
+    private final List<long[]> pendingWrites = new ArrayList<>();  // {address, size, value} until the barrier
+    private int coherenceMisses = 0; // misses on a block this cache lost to another core's write
+
+    // Single core with a DRAM model: misses return DramController.PENDING and the fill is queued
+    // by setWaiter(); null for a constant miss penalty
+    private DramController dram;
+    private int dramMiss = -1; // first missing address of the last access(), or -1
+
     public MemoryCache(int cacheSizeBytes, int blockSizeBytes, int hitLatency, int missPenalty) {
+        this(cacheSizeBytes, blockSizeBytes, hitLatency, missPenalty, new MainMemory());
+        // Pre-initialize memory with test data
+        initializeMemory(memory);
+    }
+
+    // Cache over an existing memory image, which is left as it is
+    public MemoryCache(int cacheSizeBytes, int blockSizeBytes, int hitLatency, int missPenalty, MainMemory memory) {
+        this.memory = memory;
         this.cacheSizeBytes = cacheSizeBytes;
         this.blockSizeBytes = blockSizeBytes;
         this.hitLatency = hitLatency;
@@ -24,44 +54,35 @@ public class MemoryCache {
         this.lines = Math.max(1, cacheSizeBytes / blockSizeBytes);
         this.linesArr = new CacheLine[lines];
         for (int i = 0; i < lines; i++) linesArr[i] = new CacheLine();
-        
-        // Pre-initialize memory with test data
-        initializeMemory();
     }
     
-    private void initializeMemory() {
+    static void initializeMemory(MainMemory memory) {
         // Initialize memory with meaningful test values at specific addresses
         // These addresses are commonly used in test cases
         
-        // Address 1000-1024: Base address for R2 in test cases
-        writeWordToMemoryOnly(1000, 10);   // Value 10 at address 1000 (for offset 0)
-        writeWordToMemoryOnly(1004, 20);   // Value 20 at address 1004 (for offset 4)
-        writeWordToMemoryOnly(1008, 30);   // Value 30 at address 1008 (for offset 8)
-        writeWordToMemoryOnly(1012, 40);   // Value 40 at address 1012 (for offset 12)
-        writeWordToMemoryOnly(1016, 50);   // Value 50 at address 1016 (for offset 16)
-        writeWordToMemoryOnly(1020, 60);   // Value 60 at address 1020 (for offset 20)
-        writeWordToMemoryOnly(1024, 70);   // Value 70 at address 1024 (for offset 24)
+        // The test cases load these with L.D, so they are stored as 8-byte doubles
+        
+        // Address 1000-1031: Base address for R2 in test cases
+        writeDoubleToMemoryOnly(memory, 1000, 10);   // 10.0 at address 1000 (for offset 0)
+        writeDoubleToMemoryOnly(memory, 1008, 30);   // 30.0 at address 1008 (for offset 8)
+        writeDoubleToMemoryOnly(memory, 1016, 50);   // 50.0 at address 1016 (for offset 16)
+        writeDoubleToMemoryOnly(memory, 1024, 70);   // 70.0 at address 1024 (for offset 24)
         
-        // Address 2000-2020: Base address for alternative test cases
-        writeWordToMemoryOnly(2000, 100);  // Value 100 at address 2000
-        writeWordToMemoryOnly(2004, 200);  // Value 200 at address 2004
-        writeWordToMemoryOnly(2008, 300);  // Value 300 at address 2008
-        writeWordToMemoryOnly(2012, 400);  // Value 400 at address 2012
-        writeWordToMemoryOnly(2016, 500);  // Value 500 at address 2016
-        writeWordToMemoryOnly(2020, 600);  // Value 600 at address 2020
+        // Address 2000-2027: Base address for alternative test cases
+        writeDoubleToMemoryOnly(memory, 2000, 100);  // 100.0 at address 2000
+        writeDoubleToMemoryOnly(memory, 2008, 300);  // 300.0 at address 2008
+        writeDoubleToMemoryOnly(memory, 2020, 600);  // 600.0 at address 2020 (for offset 20)
         
-        // Address 0-24: For edge case testing with R2=0
-        writeWordToMemoryOnly(0, 5);       // Value 5 at address 0
-        writeWordToMemoryOnly(8, 15);      // Value 15 at address 8
-        writeWordToMemoryOnly(16, 25);     // Value 25 at address 16
-        writeWordToMemoryOnly(24, 35);     // Value 35 at address 24
+        // Address 0-31: For edge case testing with R2=0
+        writeDoubleToMemoryOnly(memory, 0, 5);       // 5.0 at address 0
+        writeDoubleToMemoryOnly(memory, 8, 15);      // 15.0 at address 8
+        writeDoubleToMemoryOnly(memory, 16, 25);     // 25.0 at address 16
+        writeDoubleToMemoryOnly(memory, 24, 35);     // 35.0 at address 24
     }
     
     // Write to memory only, without updating cache (for initialization)
-    private void writeWordToMemoryOnly(int address, int value) {
-        for (int i = 0; i < 4; i++) {
-            memory.put(address + i, (value >> (8 * i)) & 0xFF);
-        }
+    private static void writeDoubleToMemoryOnly(MainMemory memory, int address, double value) {
+        memory.writeLong(address, Double.doubleToRawLongBits(value));
     }
 
     // Simple direct-mapped index
@@ -74,25 +95,106 @@ public class MemoryCache {
         return address / blockSizeBytes;
     }
 
+    private boolean present(int address) {
+        CacheLine line = linesArr[indexOf(address)];
+        return line.valid && line.tag == tagOf(address);
+    }
+
     public int access(int address, int size) {
         // Check hit/miss and return MISS PENALTY only (not including hit latency)
         // Hit latency is part of the load/store execution time
         // Cache will be updated only after miss penalty is paid
-        int idx = indexOf(address);
-        int tag = tagOf(address);
-        CacheLine line = linesArr[idx];
-        if (line.valid && line.tag == tag) {
+        // An access straddling two blocks hits only if both are present
+        if (bus != null) return coherentAccess(address, size, false);
+        dramMiss = -1;
+        if (present(address) && present(address + size - 1)) {
             hits++;
             return 0; // Hit - no miss penalty, only execution time
         } else {
             misses++;
+            if (dram != null) {
+                dramMiss = present(address) ? address + size - 1 : address;
+                return DramController.PENDING;
+            }
             // Don't update cache here - will be updated after miss penalty is paid
             return missPenalty; // Return only miss penalty, not including hit latency
         }
     }
     
-    // Called after a load completes to bring the block into cache
+    // Timing accesses bind the miss to a station with setWaiter() (bus requests, DRAM fills).
+    // Stores also need write permission under MESI; without a bus this is access(address, size)
+    public int access(int address, int size, boolean write) {
+        return bus != null ? coherentAccess(address, size, write) : access(address, size);
+    }
+
+    // Hit if every block is present with the needed permission. Otherwise a bus request is queued
+    // for the barrier: BusRd or BusRdX on a miss (full miss penalty), BusUpgr for a store to a
+    // Shared line (bus latency only). The bus may add queueing delay to the station passed to setWaiter.
+    private int coherentAccess(int address, int size, boolean write) {
+        lastAccessStart = requests.size();
+        boolean miss = false, upgrade = false;
+        for (int b = tagOf(address); b <= tagOf(address + size - 1); b++) {
+            CacheLine line = linesArr[Math.floorMod(b, lines)];
+            boolean present = line.valid && line.tag == b;
+            if (present && (!write || line.state != CoherentBus.SHARED)) {
+                if (write) line.state = CoherentBus.MODIFIED; // E -> M needs no bus transaction
+                continue;
+            }
+            if (present) {
+                upgrade = true;
+                requests.add(new CoherentBus.Request(core, b, CoherentBus.BUS_UPGR));
+            } else {
+                miss = true;
+                if (line.lostTag == b) coherenceMisses++;
+                requests.add(new CoherentBus.Request(core, b, write ? CoherentBus.BUS_RDX : CoherentBus.BUS_RD));
+            }
+        }
+        if (miss) {
+            misses++;
+            return missPenalty;
+        }
+        hits++;
+        return upgrade ? bus.latency : 0;
+    }
+
+    // Station waiting on the bus requests of the last access (multicore only)
+    public void setWaiter(ReservationStation rs) {
+        for (int i = lastAccessStart; i < requests.size(); i++) requests.get(i).waiter = rs;
+        if (dramMiss >= 0) {
+            dram.enqueue(dramMiss, rs);
+            dramMiss = -1;
+        }
+    }
+
+    // Page table entry read by a page walk (single core): true on a hit, otherwise the block is
+    // installed at once and the walker pays the constant miss penalty (walks bypass the DRAM model)
+    public boolean walkAccess(int address) {
+        if (present(address)) return true;
+        int idx = indexOf(address);
+        CacheLine line = linesArr[idx];
+        line.valid = true;
+        line.tag = tagOf(address);
+        dirtyLines.set(idx);
+        return false;
+    }
+
+    public void setDram(DramController dram) { this.dram = dram; }
+    public DramController getDram() { return dram; }
+    public boolean hasBus() { return bus != null; }
+
+    // Advance the DRAM model (if any) to this cycle
+    public void tick(long cycle) {
+        if (dram != null) dram.tick(cycle);
+    }
+
+    // Called after a load completes to bring the block(s) covering [address, address + size) into cache
+    public void loadBlockIntoCache(int address, int size) {
+        loadBlockIntoCache(address);
+        if (tagOf(address + size - 1) != tagOf(address)) loadBlockIntoCache(address + size - 1);
+    }
+
     public void loadBlockIntoCache(int address) {
+        if (bus != null) return; // the bus installs the line when it grants the request
         int idx = indexOf(address);
         int tag = tagOf(address);
         CacheLine line = linesArr[idx];
@@ -100,108 +202,242 @@ public class MemoryCache {
         // Bring block into cache
         line.valid = true;
         line.tag = tag;
+        dirtyLines.set(idx);
         
         // Fill bytes from memory (if absent default 0)
         int base = tag * blockSizeBytes;
-        for (int i = 0; i < blockSizeBytes; i++) {
-            memory.putIfAbsent(base + i, 0);
-        }
+        memory.touch(base, blockSizeBytes);
     }
 
     public int readWord(int address) {
         // word = 4 bytes little-endian combined
-        int v = 0;
-        for (int i = 0; i < 4; i++) {
-            v |= (memory.getOrDefault(address + i, 0) & 0xFF) << (8 * i);
+        if (!pendingWrites.isEmpty()) return (int) readForwarded(address, 4);
+        return memory.readWord(address);
+    }
+
+    public long readLong(int address) {
+        if (!pendingWrites.isEmpty()) return readForwarded(address, 8);
+        return memory.readLong(address);
+    }
+
+    // This core's own stores are visible to it before the barrier writes them to shared memory
+    private long readForwarded(int address, int size) {
+        long v = 0;
+        for (int i = 0; i < size; i++) {
+            int a = address + i;
+            long b = memory.readByte(a);
+            for (long[] w : pendingWrites) {
+                if (a >= w[0] && a < w[0] + w[1]) b = (w[2] >>> (8 * (a - w[0]))) & 0xFF;
+            }
+            v |= b << (8 * i);
         }
         return v;
     }
 
     public void writeWord(int address, int value) {
-        // Write word to memory and update cache
+        write(address, 4);
+        if (bus != null) pendingWrites.add(new long[] {address, 4, value});
+        else memory.writeWord(address, value);
+    }
+
+    public void writeLong(int address, long value) {
+        write(address, 8);
+        if (bus != null) pendingWrites.add(new long[] {address, 8, value});
+        else memory.writeLong(address, value);
+    }
+
+    // Cache side of a store of size bytes; the caller writes memory
+    private void write(int address, int size) {
+        if (bus != null) {
+            // The store normally gained M when it accessed the cache; ask again if it has since lost it
+            if (present(address) && present(address + size - 1)) hits++;
+            else misses++;
+            for (int b = tagOf(address); b <= tagOf(address + size - 1); b++) {
+                CacheLine line = linesArr[Math.floorMod(b, lines)];
+                boolean present = line.valid && line.tag == b;
+                if (present && line.state == CoherentBus.EXCLUSIVE) line.state = CoherentBus.MODIFIED;
+                if (present && line.state == CoherentBus.MODIFIED) continue;
+                requests.add(new CoherentBus.Request(core, b, present ? CoherentBus.BUS_UPGR : CoherentBus.BUS_RDX));
+            }
+            for (int w = (address / 4) * 4; w <= ((address + size - 1) / 4) * 4; w += 4) dirtyWords.add(w);
+            return;
+        }
         // Check if it's a hit or miss for statistics
-        int idx = indexOf(address);
-        int tag = tagOf(address);
-        CacheLine line = linesArr[idx];
-        
-        if (line.valid && line.tag == tag) {
+        if (present(address) && present(address + size - 1)) {
             // Cache hit on write
             hits++;
         } else {
-            // Cache miss - write-allocate: bring block into cache
+            // Cache miss - write-allocate: bring block(s) into cache
             misses++;
-            line.valid = true;
-            line.tag = tag;
         }
-        
-        // Write to memory
-        for (int i = 0; i < 4; i++) {
-            memory.put(address + i, (value >> (8 * i)) & 0xFF);
+        for (int a : new int[] {address, address + size - 1}) {
+            CacheLine line = linesArr[indexOf(a)];
+            line.valid = true;
+            line.tag = tagOf(a);
+            dirtyLines.set(indexOf(a));
         }
+        // An unaligned write can straddle display words
+        for (int w = (address / 4) * 4; w <= ((address + size - 1) / 4) * 4; w += 4) dirtyWords.add(w);
+    }
+
+    // Move dirty line indices and word addresses into the given sets and reset tracking
+    public void drainDirty(BitSet lineOut, Set<Integer> wordOut) {
+        lineOut.or(dirtyLines);
+        wordOut.addAll(dirtyWords);
+        dirtyLines.clear();
+        dirtyWords.clear();
     }
     
     public int getHits() { return hits; }
     public int getMisses() { return misses; }
+    public int getCoherenceMisses() { return coherenceMisses; }
     public int getLines() { return lines; }
     public int getBlockSize() { return blockSizeBytes; }
+    public MainMemory getMemory() { return memory; }
+
+    // Direct per-line accessors, so views can materialize only the rows they show
+    public boolean isLineValid(int i) { return linesArr[i].valid; }
+    public int getLineTag(int i) { return linesArr[i].valid ? linesArr[i].tag : -1; }
+    public int getLineBaseAddress(int i) { return linesArr[i].valid ? linesArr[i].tag * blockSizeBytes : -1; }
+    public int lineIndexOf(int address) { return indexOf(address); }
+
+    // Checkpoint support: cache geometry, line tags, statistics and the full memory image
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(lines);
+        out.writeInt(blockSizeBytes);
+        out.writeInt(hits);
+        out.writeInt(misses);
+        for (CacheLine line : linesArr) {
+            out.writeBoolean(line.valid);
+            out.writeInt(line.tag);
+        }
+        out.writeInt(memory.pages().size());
+        for (Map.Entry<Integer, byte[]> e : memory.pages().entrySet()) {
+            out.writeInt(e.getKey());
+            out.write(e.getValue());
+        }
+    }
+
+    void readState(DataInputStream in) throws IOException {
+        int savedLines = in.readInt();
+        int savedBlockSize = in.readInt();
+        if (savedLines != lines || savedBlockSize != blockSizeBytes) {
+            throw new IOException("Checkpoint cache geometry (" + savedLines + " lines x " + savedBlockSize
+                    + " B) does not match config (" + lines + " lines x " + blockSizeBytes + " B)");
+        }
+        hits = in.readInt();
+        misses = in.readInt();
+        for (CacheLine line : linesArr) {
+            line.valid = in.readBoolean();
+            line.tag = in.readInt();
+        }
+        memory.clear();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            int pageNo = in.readInt();
+            byte[] data = new byte[MainMemory.PAGE_SIZE];
+            in.readFully(data);
+            memory.putPage(pageNo, data);
+        }
+    }
     
     // Get cache state for display
     public List<Map<String, Object>> getCacheState() {
         List<Map<String, Object>> state = new ArrayList<>();
         for (int i = 0; i < lines; i++) {
-            Map<String, Object> lineInfo = new HashMap<>();
-            lineInfo.put("index", i);
-            lineInfo.put("valid", linesArr[i].valid);
-            lineInfo.put("tag", linesArr[i].valid ? linesArr[i].tag : -1);
-            // Calculate address range for this block
-            if (linesArr[i].valid) {
-                int baseAddr = linesArr[i].tag * blockSizeBytes;
-                lineInfo.put("baseAddr", baseAddr);
-                lineInfo.put("endAddr", baseAddr + blockSizeBytes - 1);
-                // Get first few bytes as sample data
-                StringBuilder data = new StringBuilder();
-                for (int j = 0; j < Math.min(4, blockSizeBytes); j++) {
-                    int byteVal = memory.getOrDefault(baseAddr + j, 0);
-                    data.append(String.format("%02X ", byteVal));
-                }
-                lineInfo.put("data", data.toString().trim());
-            } else {
-                lineInfo.put("baseAddr", -1);
-                lineInfo.put("endAddr", -1);
-                lineInfo.put("data", "---");
-            }
-            state.add(lineInfo);
+            state.add(getLineState(i));
         }
         return state;
     }
+
+    // Display state of a single cache line
+    public Map<String, Object> getLineState(int i) {
+        Map<String, Object> lineInfo = new HashMap<>();
+        lineInfo.put("index", i);
+        lineInfo.put("valid", isLineValid(i));
+        lineInfo.put("tag", getLineTag(i));
+        // Calculate address range for this block
+        if (isLineValid(i)) {
+            int baseAddr = getLineBaseAddress(i);
+            lineInfo.put("baseAddr", baseAddr);
+            lineInfo.put("endAddr", baseAddr + blockSizeBytes - 1);
+            // Get first few bytes as sample data
+            StringBuilder data = new StringBuilder();
+            for (int j = 0; j < Math.min(4, blockSizeBytes); j++) {
+                int byteVal = memory.readByte(baseAddr + j);
+                data.append(String.format("%02X ", byteVal));
+            }
+            lineInfo.put("data", data.toString().trim());
+        } else {
+            lineInfo.put("baseAddr", -1);
+            lineInfo.put("endAddr", -1);
+            lineInfo.put("data", "---");
+        }
+        return lineInfo;
+    }
     
     // Get memory state (non-zero words only) for display
     public List<Map<String, Object>> getMemoryState() {
         List<Map<String, Object>> state = new ArrayList<>();
-        Set<Integer> wordAddresses = new TreeSet<>();
-        
-        // Find all word-aligned addresses that have non-zero data
-        for (Integer byteAddr : memory.keySet()) {
-            int wordAddr = (byteAddr / 4) * 4; // Align to word boundary
-            wordAddresses.add(wordAddr);
-        }
-        
-        // Read each word and add to state if non-zero
-        for (Integer addr : wordAddresses) {
-            int value = readWord(addr);
-            if (value != 0) {
-                Map<String, Object> entry = new HashMap<>();
-                entry.put("address", addr);
-                entry.put("value", value);
-                state.add(entry);
-            }
+        for (int addr : memory.nonZeroWordAddresses()) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("address", addr);
+            entry.put("value", readWord(addr));
+            state.add(entry);
         }
-        
         return state;
     }
 
+    // Coherence hooks, called by CoherentBus at the cycle barrier
+    void attach(CoherentBus bus, int core) {
+        this.bus = bus;
+        this.core = core;
+    }
+
+    byte stateOf(int block) {
+        CacheLine line = linesArr[Math.floorMod(block, lines)];
+        return line.valid && line.tag == block ? line.state : CoherentBus.INVALID;
+    }
+
+    // Downgrade or invalidate a block this cache holds
+    void setState(int block, byte state) {
+        int idx = Math.floorMod(block, lines);
+        CacheLine line = linesArr[idx];
+        if (!line.valid || line.tag != block) return;
+        if (state == CoherentBus.INVALID) {
+            line.valid = false;
+            line.lostTag = block;
+        }
+        line.state = state;
+        dirtyLines.set(idx);
+    }
+
+    // Install block in the given state; returns the state of the block it replaced (INVALID if none)
+    byte install(int block, byte state) {
+        int idx = Math.floorMod(block, lines);
+        CacheLine line = linesArr[idx];
+        byte evicted = line.valid && line.tag != block ? line.state : CoherentBus.INVALID;
+        line.valid = true;
+        line.tag = block;
+        line.state = state;
+        line.lostTag = -1;
+        dirtyLines.set(idx);
+        memory.touch(block * blockSizeBytes, blockSizeBytes);
+        return evicted;
+    }
+
+    void applyPendingWrites() {
+        for (long[] w : pendingWrites) {
+            if (w[1] == 8) memory.writeLong((int) w[0], w[2]);
+            else memory.writeWord((int) w[0], (int) w[2]);
+        }
+        pendingWrites.clear();
+    }
+
     private static class CacheLine {
         boolean valid = false;
         int tag = -1;
+        byte state = CoherentBus.INVALID; // MESI state (multicore only)
+        int lostTag = -1;                 // block last invalidated by another core (multicore only)
     }
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package com.tomasulo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+// Several TomasuloEngine cores, each with a private L1 data cache, over one shared MainMemory kept
+// coherent by a snooping MESI bus. In every cycle each busy core steps on its own - in parallel worker
+// threads with run() - touching only its own state; bus requests and stores wait for the cycle
+// barrier, where CoherentBus applies them in a fixed order. Parallel and sequential runs therefore
+// give identical results.
+// Load a program into each core with cores.get(i).loadInstructions(). Checkpoints, fastForward()
+// and co-simulation are single-core features and are not supported for a multicore system.
+public class MulticoreSystem {
+    public final SimulatorConfig cfg;
+    public final MainMemory memory = new MainMemory();
+    public final CoherentBus bus;
+    public final List<TomasuloEngine> cores = new ArrayList<>();
+    public long cycle = 0;
+
+    public MulticoreSystem(SimulatorConfig cfg, int numCores) {
+        if (numCores < 1) throw new IllegalArgumentException("Need at least one core, got " + numCores);
+        this.cfg = cfg;
+        MemoryCache.initializeMemory(memory);
+        bus = new CoherentBus(cfg.busLatency, cfg.cacheMissPenalty);
+        for (int i = 0; i < numCores; i++) {
+            TomasuloEngine core = new TomasuloEngine(cfg, memory);
+            bus.attach(core.cache);
+            cores.add(core);
+        }
+    }
+
+    public boolean isIdle() {
+        for (TomasuloEngine core : cores) {
+            if (!core.isIdle()) return false;
+        }
+        return true;
+    }
+
+    // One cycle of every core, on the calling thread
+    public void step() {
+        for (TomasuloEngine core : cores) {
+            if (!core.isIdle()) core.step();
+        }
+        endCycle();
+    }
+
+    private void endCycle() {
+        bus.endCycle(cycle);
+        cycle++;
+    }
+
+    // Run until every core is idle or cycle reaches maxCycles, stepping the cores on up to `threads`
+    // worker threads (core i runs on worker i % threads). Returns the number of cycles run.
+    public long run(long maxCycles, int threads) throws InterruptedException {
+        long start = cycle;
+        int n = Math.max(1, Math.min(threads, cores.size()));
+        if (n == 1) {
+            while (!isIdle() && cycle < maxCycles) step();
+            return cycle - start;
+        }
+        if (isIdle() || cycle >= maxCycles) return 0;
+
+        boolean[] stop = {false};
+        Throwable[] failure = {null};
+        // The barrier action runs on the last thread to arrive while the others wait
+        CyclicBarrier barrier = new CyclicBarrier(n, () -> {
+            endCycle();
+            stop[0] = failure[0] != null || isIdle() || cycle >= maxCycles;
+        });
+        Thread[] workers = new Thread[n];
+        for (int w = 0; w < n; w++) {
+            int first = w;
+            workers[w] = new Thread(() -> {
+                try {
+                    while (true) {
+                        try {
+                            for (int i = first; i < cores.size(); i += n) {
+                                TomasuloEngine core = cores.get(i);
+                                if (!core.isIdle()) core.step();
+                            }
+                        } catch (RuntimeException | Error ex) {
+                            // Still reach the barrier so the other workers stop cleanly
+                            synchronized (failure) {
+                                if (failure[0] == null) failure[0] = ex;
+                            }
+                        }
+                        barrier.await();
+                        if (stop[0]) return;
+                    }
+                } catch (InterruptedException | BrokenBarrierException ex) {
+                    // run() was interrupted
+                }
+            }, "tomasulo-core-" + w);
+            workers[w].setDaemon(true);
+            workers[w].start();
+        }
+        try {
+            for (Thread t : workers) t.join();
+        } catch (InterruptedException ex) {
+            for (Thread t : workers) t.interrupt();
+            throw ex;
+        }
+        if (failure[0] instanceof RuntimeException) throw (RuntimeException) failure[0];
+        if (failure[0] instanceof Error) throw (Error) failure[0];
+        return cycle - start;
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        long completed = 0;
+        for (int i = 0; i < cores.size(); i++) {
+            TomasuloEngine core = cores.get(i);
+            completed += core.counters.completed;
+            sb.append(String.format("Core %d: cycles=%d completed=%d IPC=%.3f cache hits=%d misses=%d coherence misses=%d%n",
+                    i, core.counters.cycles, core.counters.completed, core.counters.ipc(),
+                    core.cache.getHits(), core.cache.getMisses(), core.cache.getCoherenceMisses()));
+        }
+        sb.append(String.format("System: cycles=%d completed=%d IPC=%.3f%n",
+                cycle, completed, cycle == 0 ? 0.0 : (double) completed / cycle));
+        sb.append(bus.report());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,260 @@
+package com.tomasulo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Cheap per-cycle performance counters maintained by TomasuloEngine.
+// All fields are plain longs so they can be sampled at any time (under the engine's monitor).
+public class PerfCounters {
+    // CPI stack: every cycle is attributed to exactly one cause, in this priority order
+    public static final int CPI_BASE = 0;       // a result was written back on the CDB
+    public static final int CPI_MEMORY = 1;     // a cache miss penalty was being paid
+    public static final int CPI_EXECUTE = 2;    // waiting on functional unit latency
+    public static final int CPI_BRANCH = 3;     // queue empty behind an unresolved branch
+    public static final int CPI_STRUCTURAL = 4; // issue blocked by a full station pool
+    public static final int CPI_DEPENDENCY = 5; // stations waiting on operands from the CDB
+    public static final int CPI_FRONTEND = 6;   // nothing in flight and nothing to issue
+    public static final String[] CPI_NAMES = {
+        "base", "memory", "execute", "branch", "structural", "dependency", "frontend"
+    };
+
+    public long cycles = 0;
+    public long issued = 0;
+    public long completed = 0; // writebacks: results, stores and branches
+    public long fastForwarded = 0; // instructions executed functionally (no cycles)
+
+    // Issue stalls by cause
+    public long stallNoAddStation = 0;
+    public long stallNoMulStation = 0;
+    public long stallNoIntStation = 0;
+    public long stallNoLoadBuffer = 0;
+    public long stallEmptyQueue = 0;
+    public long stallRegReadPorts = 0;  // register file read ports exhausted
+    public long stallRenameWidth = 0;   // rename bandwidth exhausted
+    public long stallRegWritePorts = 0; // finished results held back for a register write port
+    public long stallFreeList = 0;      // no free physical register (physical register renaming)
+    public long stallRatCheckpoints = 0; // branch waiting for a RAT snapshot slot
+    public long physRegsInUse = 0;      // allocated physical registers, summed per cycle
+    public long stallWindowFull = 0;    // no free issue window entry (SimulatorConfig.windowSize > 0)
+    public long selectConflicts = 0;    // ready instructions left without a functional unit, summed per cycle
+    public long stallMultiplier = 0;    // ready multiplies waiting for an initiation slot (cfg.mulInterval)
+    public long stallDivider = 0;       // ready divides waiting for a free divider (cfg.divUnits)
+    public long divides = 0;
+    public long divideCycles = 0;       // latency summed over started divides
+
+    // Front end (SimulatorConfig.fetchWidth > 0)
+    public long fetched = 0;
+    public long icacheHits = 0;
+    public long icacheMisses = 0;
+    public long stallICacheMiss = 0;      // cycles fetch waited on an I-cache miss
+    public long stallDecodeQueueFull = 0; // cycles fetch stopped at a full decode queue
+    public long fetchFlushed = 0;         // fetched instructions discarded by taken branches
+    public long loopBufferCaptures = 0;   // loops newly captured by the loop buffer
+    public long loopBufferFetched = 0;    // instructions fetched from the loop buffer
+
+    // Data TLB (SimulatorConfig.tlbEntries > 0)
+    public long tlbHits = 0;
+    public long tlbMisses = 0;
+    public long pageWalkCycles = 0;    // summed over all walks
+    public long pageWalkCacheHits = 0; // page table entries found in the data cache (cached walks)
+
+    // Occupancy histograms: [k] = cycles with k busy stations in the pool
+    public final long[] addOccupancy;
+    public final long[] mulOccupancy;
+    public final long[] intOccupancy;
+    public final long[] loadOccupancy;
+    public final long[] windowOccupancy; // issue window; a single entry without one
+
+    public long cdbContentionCycles = 0; // cycles with more than one result ready for the CDB
+    public long cdbDeferredResults = 0;  // results that lost arbitration (summed per cycle)
+    public long loadStoreBusyCycles = 0; // cycles the single load/store unit was executing
+    public long cacheMissCycles = 0;     // cycles with at least one miss penalty counting down
+    public long branchWaitCycles = 0;    // cycles with an unresolved branch in a station
+
+    public final long[] cpiStack = new long[CPI_NAMES.length];
+
+    // Per SMT hardware thread (a single entry without SMT)
+    public final long[] threadIssued;
+    public final long[] threadCompleted;
+
+    private final int physRegs;
+    private final boolean frontEnd;
+    private final boolean tlb;
+    private final boolean mulDivUnits;
+
+    public PerfCounters(SimulatorConfig cfg) {
+        physRegs = cfg.physRegs;
+        frontEnd = cfg.fetchWidth > 0;
+        tlb = cfg.tlbEntries > 0;
+        mulDivUnits = cfg.mulInterval > 0 || cfg.divUnits > 0 || cfg.divEarlyOut;
+        addOccupancy = new long[cfg.numAddStations + 1];
+        mulOccupancy = new long[cfg.numMulStations + 1];
+        intOccupancy = new long[cfg.numIntStations + 1];
+        loadOccupancy = new long[cfg.numLoadBuffers + 1];
+        windowOccupancy = new long[Math.max(0, cfg.windowSize) + 1];
+        threadIssued = new long[Math.max(1, cfg.smtThreads)];
+        threadCompleted = new long[Math.max(1, cfg.smtThreads)];
+    }
+
+    public double ipc() {
+        return cycles == 0 ? 0 : (double) completed / cycles;
+    }
+
+    public double cpi() {
+        return completed == 0 ? 0 : (double) cycles / completed;
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Cycles=%d Issued=%d Completed=%d IPC=%.3f CPI=%.3f%n",
+                cycles, issued, completed, ipc(), cpi()));
+        if (fastForwarded > 0) sb.append("Fast-forwarded=").append(fastForwarded).append('\n');
+        sb.append(String.format("Issue stalls: add=%d mul=%d int=%d load=%d emptyQueue=%d readPorts=%d rename=%d%n",
+                stallNoAddStation, stallNoMulStation, stallNoIntStation, stallNoLoadBuffer, stallEmptyQueue,
+                stallRegReadPorts, stallRenameWidth));
+        sb.append(String.format("CDB contention=%d cycles (%d deferred, %d waiting for write ports), LSU busy=%d, miss cycles=%d, branch wait=%d%n",
+                cdbContentionCycles, cdbDeferredResults, stallRegWritePorts, loadStoreBusyCycles, cacheMissCycles, branchWaitCycles));
+        if (frontEnd) {
+            sb.append(String.format("Front end: fetched=%d I-cache hits=%d misses=%d, I-cache stall=%d decode queue full=%d flushed=%d%n",
+                    fetched, icacheHits, icacheMisses, stallICacheMiss, stallDecodeQueueFull, fetchFlushed));
+            if (loopBufferCaptures > 0) {
+                sb.append(String.format("Loop buffer: %d loops captured, %d instructions replayed%n",
+                        loopBufferCaptures, loopBufferFetched));
+            }
+        }
+        if (windowOccupancy.length > 1) {
+            sb.append(String.format("Issue window: full=%d, ready without a unit=%d, occupancy=%s%n",
+                    stallWindowFull, selectConflicts, histogram(windowOccupancy)));
+        }
+        if (mulDivUnits) {
+            sb.append(String.format("Mul/div units: multiplies waiting=%d, divides waiting=%d, divides=%d (%.1f cycles each)%n",
+                    stallMultiplier, stallDivider, divides, divides == 0 ? 0.0 : (double) divideCycles / divides));
+        }
+        if (tlb) {
+            sb.append(String.format("TLB: hits=%d misses=%d (%.2f%% miss rate), page walks=%d cycles (%.1f per miss), PTE cache hits=%d%n",
+                    tlbHits, tlbMisses, tlbHits + tlbMisses == 0 ? 0.0 : 100.0 * tlbMisses / (tlbHits + tlbMisses),
+                    pageWalkCycles, tlbMisses == 0 ? 0.0 : (double) pageWalkCycles / tlbMisses, pageWalkCacheHits));
+        }
+        if (threadIssued.length > 1) {
+            for (int t = 0; t < threadIssued.length; t++) {
+                sb.append(String.format("Thread %d: issued=%d completed=%d IPC=%.3f%n", t, threadIssued[t],
+                        threadCompleted[t], cycles == 0 ? 0.0 : (double) threadCompleted[t] / cycles));
+            }
+        }
+        if (physRegs > 0) {
+            sb.append(String.format("Physical registers: %.1f of %d in use on average, free list stalls=%d, RAT snapshot stalls=%d%n",
+                    cycles == 0 ? 0.0 : (double) physRegsInUse / cycles, physRegs, stallFreeList, stallRatCheckpoints));
+        }
+        sb.append("Occupancy add=").append(histogram(addOccupancy))
+          .append(" mul=").append(histogram(mulOccupancy))
+          .append(" int=").append(histogram(intOccupancy))
+          .append(" load=").append(histogram(loadOccupancy)).append('\n');
+        sb.append("CPI stack:");
+        for (int i = 0; i < cpiStack.length; i++) {
+            double share = completed == 0 ? 0 : (double) cpiStack[i] / completed;
+            sb.append(String.format(" %s=%.3f", CPI_NAMES[i], share));
+        }
+        return sb.toString();
+    }
+
+    private static String histogram(long[] h) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < h.length; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(h[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    // Checkpoint support
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeLong(cycles);
+        out.writeLong(issued);
+        out.writeLong(completed);
+        out.writeLong(fastForwarded);
+        out.writeLong(stallNoAddStation);
+        out.writeLong(stallNoMulStation);
+        out.writeLong(stallNoIntStation);
+        out.writeLong(stallNoLoadBuffer);
+        out.writeLong(stallEmptyQueue);
+        out.writeLong(stallRegReadPorts);
+        out.writeLong(stallRenameWidth);
+        out.writeLong(stallRegWritePorts);
+        out.writeLong(stallFreeList);
+        out.writeLong(stallRatCheckpoints);
+        out.writeLong(physRegsInUse);
+        out.writeLong(stallWindowFull);
+        out.writeLong(selectConflicts);
+        out.writeLong(stallMultiplier);
+        out.writeLong(stallDivider);
+        out.writeLong(divides);
+        out.writeLong(divideCycles);
+        out.writeLong(fetched);
+        out.writeLong(icacheHits);
+        out.writeLong(icacheMisses);
+        out.writeLong(stallICacheMiss);
+        out.writeLong(stallDecodeQueueFull);
+        out.writeLong(fetchFlushed);
+        out.writeLong(loopBufferCaptures);
+        out.writeLong(loopBufferFetched);
+        out.writeLong(tlbHits);
+        out.writeLong(tlbMisses);
+        out.writeLong(pageWalkCycles);
+        out.writeLong(pageWalkCacheHits);
+        out.writeLong(cdbContentionCycles);
+        out.writeLong(cdbDeferredResults);
+        out.writeLong(loadStoreBusyCycles);
+        out.writeLong(cacheMissCycles);
+        out.writeLong(branchWaitCycles);
+        for (long[] h : new long[][] {addOccupancy, mulOccupancy, intOccupancy, loadOccupancy, windowOccupancy,
+                cpiStack, threadIssued, threadCompleted}) {
+            for (long v : h) out.writeLong(v);
+        }
+    }
+
+    void readState(DataInputStream in) throws IOException {
+        cycles = in.readLong();
+        issued = in.readLong();
+        completed = in.readLong();
+        fastForwarded = in.readLong();
+        stallNoAddStation = in.readLong();
+        stallNoMulStation = in.readLong();
+        stallNoIntStation = in.readLong();
+        stallNoLoadBuffer = in.readLong();
+        stallEmptyQueue = in.readLong();
+        stallRegReadPorts = in.readLong();
+        stallRenameWidth = in.readLong();
+        stallRegWritePorts = in.readLong();
+        stallFreeList = in.readLong();
+        stallRatCheckpoints = in.readLong();
+        physRegsInUse = in.readLong();
+        stallWindowFull = in.readLong();
+        selectConflicts = in.readLong();
+        stallMultiplier = in.readLong();
+        stallDivider = in.readLong();
+        divides = in.readLong();
+        divideCycles = in.readLong();
+        fetched = in.readLong();
+        icacheHits = in.readLong();
+        icacheMisses = in.readLong();
+        stallICacheMiss = in.readLong();
+        stallDecodeQueueFull = in.readLong();
+        fetchFlushed = in.readLong();
+        loopBufferCaptures = in.readLong();
+        loopBufferFetched = in.readLong();
+        tlbHits = in.readLong();
+        tlbMisses = in.readLong();
+        pageWalkCycles = in.readLong();
+        pageWalkCacheHits = in.readLong();
+        cdbContentionCycles = in.readLong();
+        cdbDeferredResults = in.readLong();
+        loadStoreBusyCycles = in.readLong();
+        cacheMissCycles = in.readLong();
+        branchWaitCycles = in.readLong();
+        for (long[] h : new long[][] {addOccupancy, mulOccupancy, intOccupancy, loadOccupancy, windowOccupancy,
+                cpiStack, threadIssued, threadCompleted}) {
+            for (int i = 0; i < h.length; i++) h[i] = in.readLong();
+        }
+    }
+}
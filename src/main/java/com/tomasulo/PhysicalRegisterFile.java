@@ -0,0 +1,152 @@
+package com.tomasulo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Renaming state for the merged register file design (SimulatorConfig.physRegs > 0): a register
+// alias table (RAT) maps each architectural register to a physical register, and destinations are
+// allocated from a free list instead of being tagged with the producing station.
+// A physical register is freed once the next writer of the same architectural register has written
+// back (there is no reorder buffer, so writeback stands in for commit), its own value has been
+// produced, and no RAT snapshot still refers to it.
+// Architectural values stay in RegisterFile, which always holds the value of the current mapping.
+public class PhysicalRegisterFile {
+    public static final int ARCH_REGS = 64; // R0-R31 and F0-F31, mapped to P0-P63 at reset
+
+    public final int size;
+    private final Map<String, Integer> rat = new HashMap<>();
+    private final boolean[] ready;
+    private final boolean[] superseded; // a younger writer of the same register has written back
+    private final ArrayDeque<Integer> freeList = new ArrayDeque<>();
+    // RAT snapshots taken at branch issue, by the branch's ReservationStation.seq. The engine never
+    // squashes, so they are not restored; they limit unresolved branches and pin the registers they map.
+    private final Map<Long, Map<String, Integer>> snapshots = new LinkedHashMap<>();
+
+    public PhysicalRegisterFile(int size) {
+        if (size <= ARCH_REGS) {
+            throw new IllegalArgumentException("Need more than " + ARCH_REGS + " physical registers, got " + size);
+        }
+        this.size = size;
+        ready = new boolean[size];
+        superseded = new boolean[size];
+        for (int i = 0; i < 32; i++) rat.put("R" + i, i);
+        for (int i = 0; i < 32; i++) rat.put("F" + i, 32 + i);
+        for (int p = 0; p < size; p++) {
+            if (p < ARCH_REGS) ready[p] = true;
+            else freeList.add(p);
+        }
+    }
+
+    public static String name(int p) {
+        return "P" + p;
+    }
+
+    public boolean hasFree() { return !freeList.isEmpty(); }
+    public int inUse() { return size - freeList.size(); }
+
+    // Current mapping of an architectural register, or -1 if it has never been written
+    public int lookup(String arch) {
+        Integer p = rat.get(arch);
+        return p == null ? -1 : p;
+    }
+
+    // Map arch to a register from the free list (check hasFree() first) and return it
+    public int allocate(String arch) {
+        int p = freeList.remove();
+        ready[p] = false;
+        superseded[p] = false;
+        rat.put(arch, p);
+        return p;
+    }
+
+    // p (previously mapped to the same architectural register as prev, or -1) has been written back
+    public void complete(int p, int prev) {
+        ready[p] = true;
+        tryFree(p);
+        if (prev >= 0) {
+            superseded[prev] = true;
+            tryFree(prev);
+        }
+    }
+
+    // limit = 0 means unlimited
+    public boolean canSnapshot(int limit) {
+        return limit <= 0 || snapshots.size() < limit;
+    }
+
+    public void takeSnapshot(long seq) {
+        snapshots.put(seq, new HashMap<>(rat));
+    }
+
+    public void releaseSnapshot(long seq) {
+        Map<String, Integer> s = snapshots.remove(seq);
+        if (s == null) return;
+        for (int p : s.values()) tryFree(p);
+    }
+
+    private void tryFree(int p) {
+        if (!superseded[p] || !ready[p]) return;
+        for (Map<String, Integer> s : snapshots.values()) {
+            if (s.containsValue(p)) return;
+        }
+        superseded[p] = false;
+        freeList.add(p);
+    }
+
+    // Checkpoint support
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        writeMap(out, rat);
+        for (int p = 0; p < size; p++) {
+            out.writeBoolean(ready[p]);
+            out.writeBoolean(superseded[p]);
+        }
+        out.writeInt(freeList.size());
+        for (int p : freeList) out.writeInt(p);
+        out.writeInt(snapshots.size());
+        for (Map.Entry<Long, Map<String, Integer>> e : snapshots.entrySet()) {
+            out.writeLong(e.getKey());
+            writeMap(out, e.getValue());
+        }
+    }
+
+    void readState(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n != size) throw new IOException("Checkpoint has " + n + " physical registers, config has " + size);
+        readMap(in, rat);
+        for (int p = 0; p < size; p++) {
+            ready[p] = in.readBoolean();
+            superseded[p] = in.readBoolean();
+        }
+        freeList.clear();
+        int f = in.readInt();
+        for (int i = 0; i < f; i++) freeList.add(in.readInt());
+        snapshots.clear();
+        int s = in.readInt();
+        for (int i = 0; i < s; i++) {
+            long seq = in.readLong();
+            Map<String, Integer> m = new HashMap<>();
+            readMap(in, m);
+            snapshots.put(seq, m);
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, Integer> m) throws IOException {
+        out.writeInt(m.size());
+        for (Map.Entry<String, Integer> e : m.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue());
+        }
+    }
+
+    private static void readMap(DataInputStream in, Map<String, Integer> m) throws IOException {
+        m.clear();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) m.put(in.readUTF(), in.readInt());
+    }
+}
@@ -0,0 +1,222 @@
+package com.tomasulo;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Per dynamic instruction timing (issue, execution start/end, writeback), stored column-wise in
+// primitive arrays. Loop iterations and reused stations each get their own record.
+// With SMT every hardware thread is recorded, and pc is the index in that thread's program.
+// Cycles not reached yet are -1. Record ids count every record since the last clear(); with a limit
+// only the most recent records are kept (trimmed in batches), so long trace-driven runs stay bounded.
+public class PipelineTrace {
+    private long first = 0;  // id of the oldest kept record
+    private int size = 0;    // records kept
+    private int limit = 0;   // records to keep, 0 = all
+    private int[] thread = new int[256];      // SMT hardware thread, 0 without SMT
+    private int[] pc = new int[256];          // index in the static program, -1 for trace-driven records
+    private int[] station = new int[256];     // index into stationNames
+    private long[] issue = new long[256];
+    private long[] execStart = new long[256];
+    private long[] execEnd = new long[256];
+    private long[] writeback = new long[256];
+    private Object[] text = new Object[256];  // the Instruction, or its text once restored from a checkpoint
+    private final String[] stationNames;
+
+    public PipelineTrace(String[] stationNames) {
+        this.stationNames = stationNames;
+    }
+
+    public int size() { return size; }
+    public long first() { return first; }
+    public long end() { return first + size; }
+    public int getThread(long id) { return thread[index(id)]; }
+    public int getPc(long id) { return pc[index(id)]; }
+    public String getStation(long id) { return stationNames[station[index(id)]]; }
+    public long getIssue(long id) { return issue[index(id)]; }
+    public long getExecStart(long id) { return execStart[index(id)]; }
+    public long getExecEnd(long id) { return execEnd[index(id)]; }
+    public long getWriteback(long id) { return writeback[index(id)]; }
+    public boolean isComplete(long id) { return writeback[index(id)] >= 0; }
+    public String getText(long id) { return String.valueOf(text[index(id)]); }
+
+    private int index(long id) {
+        if (id < first || id >= end()) throw new IndexOutOfBoundsException("Record " + id + ", kept " + first + ".." + end());
+        return (int) (id - first);
+    }
+
+    // Keep only about the last maxRecords records (0 = all)
+    public void setLimit(int maxRecords) {
+        limit = Math.max(0, maxRecords);
+        trim();
+    }
+
+    // Returns the new record id
+    long recordIssue(int threadIndex, int programIndex, Instruction ins, int stationIndex, long cycle) {
+        if (size == issue.length) grow();
+        int i = size++;
+        thread[i] = threadIndex;
+        pc[i] = programIndex;
+        station[i] = stationIndex;
+        text[i] = ins;
+        issue[i] = cycle;
+        execStart[i] = execEnd[i] = writeback[i] = -1;
+        long id = first + i;
+        trim();
+        return id;
+    }
+
+    void recordExecStart(long id, long cycle) { if (id >= first && execStart[(int) (id - first)] < 0) execStart[(int) (id - first)] = cycle; }
+    void recordExecEnd(long id, long cycle) { if (id >= first) execEnd[(int) (id - first)] = cycle; }
+    void recordWriteback(long id, long cycle) { if (id >= first) writeback[(int) (id - first)] = cycle; }
+
+    public void clear() {
+        first = 0;
+        size = 0;
+        Arrays.fill(text, null);
+    }
+
+    // Drop the oldest records once twice the limit are kept, so trimming stays amortized O(1)
+    private void trim() {
+        if (limit <= 0 || size < 2 * limit) return;
+        int drop = size - limit;
+        System.arraycopy(thread, drop, thread, 0, limit);
+        System.arraycopy(pc, drop, pc, 0, limit);
+        System.arraycopy(station, drop, station, 0, limit);
+        System.arraycopy(issue, drop, issue, 0, limit);
+        System.arraycopy(execStart, drop, execStart, 0, limit);
+        System.arraycopy(execEnd, drop, execEnd, 0, limit);
+        System.arraycopy(writeback, drop, writeback, 0, limit);
+        System.arraycopy(text, drop, text, 0, limit);
+        Arrays.fill(text, limit, size, null);
+        size = limit;
+        first += drop;
+    }
+
+    private void grow() {
+        int n = issue.length * 2;
+        thread = Arrays.copyOf(thread, n);
+        pc = Arrays.copyOf(pc, n);
+        station = Arrays.copyOf(station, n);
+        issue = Arrays.copyOf(issue, n);
+        execStart = Arrays.copyOf(execStart, n);
+        execEnd = Arrays.copyOf(execEnd, n);
+        writeback = Arrays.copyOf(writeback, n);
+        text = Arrays.copyOf(text, n);
+    }
+
+    // pc is empty for trace-driven records, which have no static program index
+    public void exportCsv(Writer w) throws IOException {
+        BufferedWriter out = new BufferedWriter(w);
+        out.write("seq,thread,pc,station,instruction,issue,exec_start,exec_end,writeback\n");
+        for (int i = 0; i < size; i++) {
+            out.write((first + i) + "," + thread[i] + "," + (pc[i] >= 0 ? String.valueOf(pc[i]) : "") + "," + stationNames[station[i]] + ",\""
+                    + String.valueOf(text[i]).replace("\"", "\"\"") + "\","
+                    + issue[i] + "," + execStart[i] + "," + execEnd[i] + "," + writeback[i] + "\n");
+        }
+        out.flush();
+    }
+
+    // Kanata 0004 log for the Konata pipeline viewer: stage Is (issue until execution starts),
+    // Ex (execution), Wb (waiting for the CDB until writeback), then retire. SMT threads use Kanata thread ids.
+    public void exportKonata(Writer w) throws IOException {
+        // Each record produces up to 4 events; sort them by cycle, keeping per-record order.
+        // Cycles are packed relative to the first issue of the kept records
+        long base = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) base = Math.min(base, issue[i]);
+        long[] events = new long[size * 4];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            n = addEvent(events, n, issue[i], base, i, 0);
+            n = addEvent(events, n, execStart[i], base, i, 1);
+            n = addEvent(events, n, execEnd[i] >= 0 ? execEnd[i] + 1 : -1, base, i, 2);
+            n = addEvent(events, n, writeback[i] >= 0 ? writeback[i] + 1 : -1, base, i, 3);
+        }
+        Arrays.sort(events, 0, n);
+
+        BufferedWriter out = new BufferedWriter(w);
+        out.write("Kanata\t0004\n");
+        long cur = n > 0 ? events[0] >>> 34 : 0;
+        out.write("C=\t" + (n > 0 ? base + cur : 0) + "\n");
+        int retired = 0;
+        for (int k = 0; k < n; k++) {
+            long cycle = events[k] >>> 34;
+            int id = (int) ((events[k] >>> 2) & 0xFFFFFFFFL);
+            int kind = (int) (events[k] & 3);
+            if (cycle > cur) {
+                out.write("C\t" + (cycle - cur) + "\n");
+                cur = cycle;
+            }
+            switch (kind) {
+                case 0:
+                    out.write("I\t" + id + "\t" + (first + id) + "\t" + thread[id] + "\n");
+                    out.write("L\t" + id + "\t0\t" + (pc[id] >= 0 ? pc[id] + ": " : "") + text[id] + " [" + stationNames[station[id]] + "]\n");
+                    out.write("S\t" + id + "\t0\tIs\n");
+                    break;
+                case 1:
+                    out.write("E\t" + id + "\t0\tIs\n");
+                    out.write("S\t" + id + "\t0\tEx\n");
+                    break;
+                case 2:
+                    out.write("E\t" + id + "\t0\tEx\n");
+                    out.write("S\t" + id + "\t0\tWb\n");
+                    break;
+                default:
+                    out.write("E\t" + id + "\t0\tWb\n");
+                    out.write("R\t" + id + "\t" + (retired++) + "\t0\n");
+                    break;
+            }
+        }
+        out.flush();
+    }
+
+    // Sort key: cycle - base (30 bits) | record index (32 bits) | event kind (2 bits)
+    private static int addEvent(long[] events, int n, long cycle, long base, int index, int kind) throws IOException {
+        if (cycle < 0) return n;
+        if (cycle - base >= 1L << 30) throw new IOException("Kept records span more than 2^30 cycles; export fewer records");
+        events[n] = ((cycle - base) << 34) | ((long) index << 2) | kind;
+        return n + 1;
+    }
+
+    // Checkpoint support; records keep their instruction as text
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeLong(first);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeShort(thread[i]);
+            out.writeInt(pc[i]);
+            out.writeShort(station[i]);
+            out.writeUTF(String.valueOf(text[i]));
+            out.writeLong(issue[i]);
+            out.writeLong(execStart[i]);
+            out.writeLong(execEnd[i]);
+            out.writeLong(writeback[i]);
+        }
+    }
+
+    void readState(DataInputStream in) throws IOException {
+        clear();
+        long firstId = in.readLong();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            if (size == issue.length) grow();
+            thread[i] = in.readShort();
+            pc[i] = in.readInt();
+            station[i] = in.readShort();
+            text[i] = in.readUTF();
+            issue[i] = in.readLong();
+            execStart[i] = in.readLong();
+            execEnd[i] = in.readLong();
+            writeback[i] = in.readLong();
+            size++;
+        }
+        first = firstId;
+    }
+
+    static String[] namesOf(List<ReservationStation> stations) {
+        List<String> names = new ArrayList<>();
+        for (ReservationStation rs : stations) names.add(rs.name);
+        return names.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,108 @@
+package com.tomasulo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Golden model: executes instructions strictly in program order, one at a time, with no timing.
+// Written independently of TomasuloEngine so the two can be checked against each other.
+// Registers hold raw bits as in RegisterFile.getBits: integers sign-extended, F registers as doubles.
+public class ReferenceInterpreter {
+    public final Map<String, Long> regs;
+    public final MainMemory memory;
+    private final List<Instruction> program; // static program; unused for traces
+    public int pc = 0;                       // index of the next static instruction
+
+    // Outcome of the last executed instruction
+    public Long lastValue;      // result (ALU/load), stored value (store) or 1/0 (branch), as raw bits
+    public Integer lastAddress; // load/store effective address
+
+    public ReferenceInterpreter(List<Instruction> program, Map<String, Long> regs, MainMemory memory) {
+        this.program = program;
+        this.regs = new HashMap<>(regs);
+        this.memory = memory;
+    }
+
+    public Instruction next() {
+        return pc >= 0 && pc < program.size() ? program.get(pc) : null;
+    }
+
+    public long get(String r) {
+        if ("R0".equals(r)) return 0;
+        Long v = regs.get(r);
+        return v == null ? 0 : v;
+    }
+
+    // Execute ins as the instruction at pc and advance pc
+    public void execute(Instruction ins) {
+        long a = ins.src1 == null ? 0 : get(ins.src1);
+        long b = ins.src2 == null ? 0 : get(ins.src2);
+        int ia = (int) a, ib = (int) b;
+        double da = Double.longBitsToDouble(a), db = Double.longBitsToDouble(b);
+        float fa = (float) da, fb = (float) db;
+        int imm = ins.immediate == null ? 0 : ins.immediate;
+        lastValue = null;
+        lastAddress = null;
+        int nextPc = pc + 1;
+        switch (ins.type) {
+            case L_D:
+                lastAddress = ins.traceAddress != null ? ins.traceAddress : ia + imm;
+                lastValue = memory.readLong(lastAddress);
+                break;
+            case L_S:
+                lastAddress = ins.traceAddress != null ? ins.traceAddress : ia + imm;
+                lastValue = Double.doubleToRawLongBits(Float.intBitsToFloat(memory.readWord(lastAddress)));
+                break;
+            case LD: case LW:
+                lastAddress = ins.traceAddress != null ? ins.traceAddress : ia + imm;
+                lastValue = (long) memory.readWord(lastAddress);
+                break;
+            case SD: case SW: case S_S: case S_D: case S_W:
+                lastAddress = ins.traceAddress != null ? ins.traceAddress : ia + imm;
+                lastValue = b;
+                if (ins.type == InstructionType.S_D) memory.writeLong(lastAddress, b);
+                else if (ins.type == InstructionType.S_S) memory.writeWord(lastAddress, Float.floatToRawIntBits(fb));
+                else memory.writeWord(lastAddress, ib);
+                break;
+            case BEQ: case BNE:
+                boolean taken = ins.traceTaken != null ? ins.traceTaken
+                    : ins.type == InstructionType.BEQ ? a == b : a != b;
+                lastValue = taken ? 1L : 0L;
+                if (taken) nextPc = pc + 1 + imm;
+                break;
+            case ADD: lastValue = (long) (ia + ib); break;
+            case SUB: lastValue = (long) (ia - ib); break;
+            case MUL: lastValue = (long) (ia * ib); break;
+            case DIV: lastValue = (long) (ib != 0 ? ia / ib : 0); break;
+            case ADD_D: lastValue = fpBits(da + db); break;
+            case SUB_D: lastValue = fpBits(da - db); break;
+            case MUL_D: lastValue = fpBits(da * db); break;
+            case DIV_D: lastValue = fpBits(da / db); break;
+            case ADD_S: lastValue = fpBits(fa + fb); break;
+            case SUB_S: lastValue = fpBits(fa - fb); break;
+            case MUL_S: lastValue = fpBits(fa * fb); break;
+            case DIV_S: lastValue = fpBits(fa / fb); break;
+            case ADDI: case DADDI: lastValue = (long) (ia + imm); break;
+            case SUBI: case DSUBI: lastValue = (long) (ia - imm); break;
+            default: break;
+        }
+        if (ins.dest != null && lastValue != null && !isStoreOrBranch(ins)) regs.put(ins.dest, narrow(ins.dest, lastValue));
+        pc = nextPc;
+    }
+
+    private static long fpBits(double d) {
+        return Double.doubleToRawLongBits(d);
+    }
+
+    // Integer registers are 32 bits wide
+    private static long narrow(String reg, long v) {
+        return RegisterFile.isFp(reg) ? v : (int) v;
+    }
+
+    private static boolean isStoreOrBranch(Instruction ins) {
+        switch (ins.type) {
+            case SD: case SW: case S_S: case S_D: case S_W: case BEQ: case BNE: return true;
+            default: return false;
+        }
+    }
+}
@@ -1,36 +1,114 @@
 package com.tomasulo;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class RegisterFile {
-    // Map register name -> value
+    public static final int FP_REGS = 32;
+
+    // Map integer register name -> value
     public final Map<String, Integer> regs = new HashMap<>();
+    // Floating-point registers F0-F31 as raw IEEE 754 double bits; single precision values are held
+    // widened to double
+    public final long[] fp = new long[FP_REGS];
     // Map register name -> reservation station tag that will produce it (for renaming)
     public final Map<String, String> tag = new HashMap<>();
+    // Registers whose value or tag changed since the last drainDirty()
+    private final Set<String> dirty = new HashSet<>();
 
     public RegisterFile() {
         // Initialize some registers for demo
         for (int i = 0; i < 32; i++) regs.put("R" + i, 0);
-        for (int i = 0; i < 32; i++) regs.put("F" + i, 0);
     }
 
+    // Index of F0-F31 in the floating-point bank, or -1 for any other name
+    public static int fpIndex(String r) {
+        if (r == null || r.length() < 2 || r.length() > 3 || r.charAt(0) != 'F') return -1;
+        int n = 0;
+        for (int i = 1; i < r.length(); i++) {
+            char c = r.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            n = n * 10 + (c - '0');
+        }
+        return n < FP_REGS ? n : -1;
+    }
+
+    public static boolean isFp(String r) {
+        return fpIndex(r) >= 0;
+    }
+
+    // Integer view; an F register is truncated toward zero
     public int get(String r) {
+        int f = fpIndex(r);
+        if (f >= 0) return (int) Double.longBitsToDouble(fp[f]);
         // R0 is always 0
         if ("R0".equals(r)) return 0;
         return regs.getOrDefault(r, 0);
     }
 
+    // An F register receives the value converted to double
     public void set(String r, int v) {
+        if (isFp(r)) {
+            setFp(r, v);
+            return;
+        }
         // R0 is hardwired to 0 and cannot be changed
         if ("R0".equals(r)) return;
         regs.put(r, v);
+        dirty.add(r);
+    }
+
+    public double getFp(String r) {
+        int f = fpIndex(r);
+        return f >= 0 ? Double.longBitsToDouble(fp[f]) : get(r);
+    }
+
+    public void setFp(String r, double v) {
+        setBits(r, Double.doubleToRawLongBits(v));
+    }
+
+    // Raw 64-bit value as carried through the pipeline: double bits for F registers,
+    // the sign-extended value for integer registers
+    public long getBits(String r) {
+        int f = fpIndex(r);
+        return f >= 0 ? fp[f] : get(r);
+    }
+
+    public void setBits(String r, long v) {
+        int f = fpIndex(r);
+        if (f < 0) {
+            set(r, (int) v);
+            return;
+        }
+        fp[f] = v;
+        dirty.add(r);
+    }
+
+    // Every register as raw bits, integer registers first
+    public Map<String, Long> toBits() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : regs.entrySet()) m.put(e.getKey(), (long) e.getValue());
+        for (int i = 0; i < FP_REGS; i++) m.put("F" + i, fp[i]);
+        return m;
+    }
+
+    public String format(String r) {
+        return formatBits(r, getBits(r));
+    }
+
+    // Display a pipeline value according to the register it comes from (integer if r is not an F register)
+    public static String formatBits(String r, long bits) {
+        return isFp(r) ? String.valueOf(Double.longBitsToDouble(bits)) : String.valueOf(bits);
     }
 
     public void setTag(String r, String station) {
         // R0 cannot have a tag (always available as 0)
         if (r == null || "R0".equals(r)) return;
         tag.put(r, station);
+        dirty.add(r);
     }
 
     public String getTag(String r) {
@@ -41,6 +119,15 @@ public class RegisterFile {
 
     public void clearTag(String r, String station) {
         String t = tag.get(r);
-        if (t != null && t.equals(station)) tag.remove(r);
+        if (t != null && t.equals(station)) {
+            tag.remove(r);
+            dirty.add(r);
+        }
+    }
+
+    // Move the dirty register names into out and reset tracking
+    public void drainDirty(Set<String> out) {
+        out.addAll(dirty);
+        dirty.clear();
     }
-}
\ No newline at end of file
+}
@@ -5,23 +5,23 @@ public class RegisterInitializer {
     public static void initializeForTestCase1(RegisterFile rf) {
         // Test Case 1 setup
         rf.set("R2", 1000);  // Base address for loads/stores (memory at 1000-1024)
-        rf.set("F4", 5);    // Multiplier operand
-        rf.set("F1", 10);
-        rf.set("F3", 20);
+        rf.setFp("F4", 5.0);  // Multiplier operand
+        rf.setFp("F1", 10.0);
+        rf.setFp("F3", 20.0);
     }
     
     public static void initializeForTestCase2(RegisterFile rf) {
         // Test Case 2 setup
         rf.set("R2", 2000);  // Base address (memory at 2000-2020)
-        rf.set("F1", 3);
-        rf.set("F3", 7);
-        rf.set("F4", 2);
+        rf.setFp("F1", 3.0);
+        rf.setFp("F3", 7.0);
+        rf.setFp("F4", 2.0);
     }
     
     public static void initializeForTestCase3(RegisterFile rf) {
         // Test Case 3 (loop) setup
         rf.set("R1", 0);   // Will be set to 24 by first DADDI
         rf.set("R2", 0);   // Loop termination value
-        rf.set("F2", 3);   // Multiplier
+        rf.setFp("F2", 3.0); // Multiplier
     }
 }
@@ -6,8 +6,8 @@ public class ReservationStation {
     public Instruction inst = null;
     public String qj = null; // tag of producer for src1
     public String qk = null; // tag for src2
-    public Integer vj = null;
-    public Integer vk = null;
+    public Long vj = null; // operand values as raw register bits (see RegisterFile.getBits)
+    public Long vk = null;
     public int remaining = 0; // cycles remaining for execution
     public boolean executing = false;
     public boolean writebackPending = false;
@@ -16,6 +16,12 @@ public class ReservationStation {
     public boolean addressReady = false; // true when address is computed
     public int cacheMissPenalty = 0; // remaining cycles for cache miss penalty
     public boolean cacheBlockLoaded = false; // true when cache block has arrived
+    public int tlbWalk = 0; // page walk cycles left before the cache access (data TLB miss)
+    public long traceId = -1; // PipelineTrace record of the instruction held here
+    public long seq = -1; // dynamic issue sequence number (counters.issued at issue)
+    public int physDest = -1; // physical register allocated for the destination (physical register renaming)
+    public int prevPhys = -1; // previous mapping of the destination, freed after this writes back
+    public int thread = 0; // SMT hardware thread the instruction belongs to
 
     public ReservationStation(String name) {
         this.name = name;
@@ -34,5 +40,11 @@ public class ReservationStation {
         addressReady = false;
         cacheMissPenalty = 0;
         cacheBlockLoaded = false;
+        tlbWalk = 0;
+        traceId = -1;
+        seq = -1;
+        physDest = -1;
+        prevPhys = -1;
+        thread = 0;
     }
 }
\ No newline at end of file
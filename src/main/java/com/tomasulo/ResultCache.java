@@ -0,0 +1,124 @@
+package com.tomasulo;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+// Content-addressed on-disk cache of finished simulations. The key is a SHA-256 over every
+// SimulatorConfig field, the run's cycle limit and a checkpoint of the initial engine (program,
+// registers, memory); the value is a checkpoint of the final engine, so final state and counters
+// come back exactly as simulated. Least recently used entries are evicted once the directory
+// grows past maxBytes.
+public class ResultCache {
+    // Bump whenever the engine's timing or semantics change, so stale results are never reused
+    public static final int MODEL_VERSION = 2;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true); // key -> bytes, LRU first
+    private long totalBytes = 0;
+    private long hits = 0, misses = 0;
+
+    public ResultCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        // Rebuild LRU order from modification times (refreshed on every hit)
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.ckpt")) {
+            for (Path p : ds) files.add(p);
+        }
+        Map<Path, FileTime> times = new HashMap<>();
+        for (Path p : files) times.put(p, Files.getLastModifiedTime(p));
+        files.sort(Comparator.comparing(times::get));
+        for (Path p : files) {
+            String name = p.getFileName().toString();
+            long size = Files.size(p);
+            entries.put(name.substring(0, name.length() - ".ckpt".length()), size);
+            totalBytes += size;
+        }
+        evict();
+    }
+
+    public static String key(TomasuloEngine initial, long maxCycles) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), md));
+            out.writeInt(MODEL_VERSION);
+            out.writeLong(maxCycles);
+            Field[] fields = SimulatorConfig.class.getFields();
+            Arrays.sort(fields, Comparator.comparing(Field::getName));
+            for (Field f : fields) {
+                out.writeUTF(f.getName());
+                out.writeUTF(String.valueOf(f.get(initial.cfg)));
+            }
+            EngineCheckpoint.save(initial, out);
+            out.flush();
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (NoSuchAlgorithmException | IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Final-state checkpoint for key, or null on a miss
+    public synchronized byte[] get(String key) {
+        if (!entries.containsKey(key)) {
+            misses++;
+            return null;
+        }
+        Path p = file(key);
+        try {
+            byte[] data = Files.readAllBytes(p);
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+            hits++;
+            return data;
+        } catch (IOException ex) {
+            // Removed behind our back; treat as a miss
+            totalBytes -= entries.remove(key);
+            misses++;
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, byte[] checkpoint) throws IOException {
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            Files.write(tmp, checkpoint);
+            Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        Long old = entries.put(key, (long) checkpoint.length);
+        if (old != null) totalBytes -= old;
+        totalBytes += checkpoint.length;
+        evict();
+    }
+
+    private void evict() throws IOException {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            Files.deleteIfExists(file(e.getKey()));
+            totalBytes -= e.getValue();
+            it.remove();
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key + ".ckpt");
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getTotalBytes() { return totalBytes; }
+    public synchronized int size() { return entries.size(); }
+}
@@ -0,0 +1,119 @@
+package com.tomasulo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Sampled simulation: fast-forward functionally between samples (keeping the cache warm), run short
+// detailed windows, and extrapolate total cycles from the measured CPI.
+// Instruction positions count dynamic instructions from the start of the program or trace.
+public class SampledSimulation {
+    // A detailed region (e.g. a SimPoint) starting at a dynamic instruction index, with its weight
+    public static class Region {
+        public final long start;
+        public final long length;
+        public final double weight;
+
+        public Region(long start, long length, double weight) {
+            this.start = start;
+            this.length = length;
+            this.weight = weight;
+        }
+    }
+
+    public static class Estimate {
+        public long instructions;         // total dynamic instructions, functional + detailed
+        public long detailedInstructions; // measured plus detailed warm-up
+        public final List<Double> sampleCpi = new ArrayList<>();
+        public double cpi;
+        public double cycles;             // extrapolated total cycles
+        public double cpiError95 = Double.NaN; // 95% confidence half-width (periodic sampling only)
+
+        @Override
+        public String toString() {
+            return String.format("Estimated cycles=%.0f CPI=%.3f%s over %d instructions (%d samples, %d detailed)",
+                    cycles, cpi, Double.isNaN(cpiError95) ? "" : String.format(" +/- %.3f", cpiError95),
+                    instructions, sampleCpi.size(), detailedInstructions);
+        }
+    }
+
+    // Systematic sampling: in every period of `period` instructions, run `warmup` detailed
+    // instructions unmeasured, then measure `length`; the rest is fast-forwarded.
+    public static Estimate runPeriodic(TomasuloEngine engine, long period, long warmup, long length) {
+        if (period < warmup + length) throw new IllegalArgumentException("period shorter than warmup + length");
+        Estimate est = new Estimate();
+        while (true) {
+            long skip = period - warmup - length;
+            if (engine.fastForward(skip) < skip) break;
+            Double cpi = sample(engine, warmup, length, est);
+            if (cpi == null) break;
+            est.sampleCpi.add(cpi);
+        }
+        finish(engine, est);
+        int n = est.sampleCpi.size();
+        double mean = 0;
+        for (double c : est.sampleCpi) mean += c;
+        mean = n == 0 ? 0 : mean / n;
+        if (n > 1) {
+            double var = 0;
+            for (double c : est.sampleCpi) var += (c - mean) * (c - mean);
+            est.cpiError95 = 1.96 * Math.sqrt(var / (n - 1) / n);
+        }
+        extrapolate(est, mean);
+        return est;
+    }
+
+    // SimPoint-style: detailed simulation of the given regions (in increasing start order, with
+    // `warmup` detailed instructions before each) and a weighted CPI
+    public static Estimate runRegions(TomasuloEngine engine, List<Region> regions, long warmup) {
+        Estimate est = new Estimate();
+        double weighted = 0, totalWeight = 0;
+        for (Region r : regions) {
+            long skip = r.start - warmup - position(engine);
+            if (skip < 0) throw new IllegalArgumentException("Regions overlap or are out of order at " + r.start);
+            if (engine.fastForward(skip) < skip) break;
+            Double cpi = sample(engine, warmup, r.length, est);
+            if (cpi == null) break;
+            est.sampleCpi.add(cpi);
+            weighted += cpi * r.weight;
+            totalWeight += r.weight;
+        }
+        finish(engine, est);
+        extrapolate(est, totalWeight == 0 ? 0 : weighted / totalWeight);
+        return est;
+    }
+
+    private static long position(TomasuloEngine engine) {
+        return engine.counters.fastForwarded + engine.counters.issued;
+    }
+
+    // Warm up, then measure CPI over `length` issued instructions; null if the stream ran out
+    private static Double sample(TomasuloEngine engine, long warmup, long length, Estimate est) {
+        long before = engine.counters.issued;
+        detailed(engine, warmup);
+        long issued = engine.counters.issued;
+        long cycles = detailed(engine, length);
+        long measured = engine.counters.issued - issued;
+        engine.drainPipeline();
+        est.detailedInstructions += engine.counters.issued - before;
+        if (measured < length || measured == 0) return null;
+        return (double) cycles / measured;
+    }
+
+    private static long detailed(TomasuloEngine engine, long n) {
+        long start = engine.cycle;
+        long target = engine.counters.issued + n;
+        while (engine.counters.issued < target && !engine.isIdle()) engine.step();
+        return engine.cycle - start;
+    }
+
+    // Fast-forward through whatever is left to count the total
+    private static void finish(TomasuloEngine engine, Estimate est) {
+        engine.fastForward(Long.MAX_VALUE);
+        est.instructions = position(engine);
+    }
+
+    private static void extrapolate(Estimate est, double cpi) {
+        est.cpi = cpi;
+        est.cycles = cpi * est.instructions;
+    }
+}
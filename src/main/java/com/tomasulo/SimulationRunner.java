@@ -0,0 +1,83 @@
+package com.tomasulo;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Steps an engine on a background thread, at full speed or at a target cycles/sec.
+// Each step holds the engine's monitor, so readers that synchronize on the engine see a consistent cycle.
+public class SimulationRunner {
+    private final TomasuloEngine engine;
+    private volatile boolean running = false;
+    private Thread worker;
+
+    public SimulationRunner(TomasuloEngine engine) {
+        this.engine = engine;
+    }
+
+    public TomasuloEngine getEngine() { return engine; }
+
+    public boolean isRunning() { return running; }
+
+    // cyclesPerSecond <= 0 means full speed; breakpoint may be null.
+    // onStop receives the reason the run ended and is called on the worker thread.
+    public void start(double cyclesPerSecond, Breakpoint breakpoint, Consumer<String> onStop) {
+        pause(); // make sure a previous worker has fully exited
+        synchronized (this) {
+            startWorker(cyclesPerSecond, breakpoint, onStop);
+        }
+    }
+
+    private void startWorker(double cyclesPerSecond, Breakpoint breakpoint, Consumer<String> onStop) {
+        running = true;
+        if (breakpoint != null) {
+            synchronized (engine) { breakpoint.arm(engine); }
+        }
+        worker = new Thread(() -> {
+            String reason = run(cyclesPerSecond, breakpoint);
+            running = false;
+            if (onStop != null) onStop.accept(reason);
+        }, "tomasulo-sim");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Stop the worker and wait for the cycle in progress to finish
+    public void pause() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = worker;
+        }
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String run(double cyclesPerSecond, Breakpoint breakpoint) {
+        long period = cyclesPerSecond > 0 ? (long) (1_000_000_000L / cyclesPerSecond) : 0;
+        long next = System.nanoTime();
+        while (running) {
+            synchronized (engine) {
+                engine.step();
+                if (breakpoint != null && breakpoint.hit(engine)) {
+                    return "Breakpoint hit (" + breakpoint + ") at cycle " + engine.cycle;
+                }
+                if (engine.isIdle()) return "Program finished at cycle " + engine.cycle;
+            }
+            if (period > 0) {
+                next += period;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else if (wait < -1_000_000_000L) {
+                    next = System.nanoTime(); // fell far behind; don't burst to catch up
+                }
+            }
+        }
+        return "Paused at cycle " + engine.cycle;
+    }
+}
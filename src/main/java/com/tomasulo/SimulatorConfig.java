@@ -1,6 +1,9 @@
 package com.tomasulo;
 
 public class SimulatorConfig {
+    public enum FetchPolicy { ROUND_ROBIN, ICOUNT }
+    public enum SelectPolicy { OLDEST_FIRST, RANDOM, CRITICAL_PATH }
+
     public int addLatency = 2;
     public int mulLatency = 5;
     public int divLatency = 10;
@@ -8,15 +11,99 @@ public class SimulatorConfig {
     public int storeLatency = 2; //cache hit
     public int intLatency = 1;
 
+    // Multiply/divide units. mulInterval 0 lets every multiply start as soon as it is ready; otherwise
+    // multiplies share mulUnits pipelined multipliers that each accept one every mulInterval cycles.
+    // divUnits 0 does the same for divides; otherwise they share that many non-pipelined dividers,
+    // each busy until its divide finishes. With divEarlyOut a divide takes divLatency scaled by the
+    // quotient bits it produces (integer quotient length, or floating-point quotient mantissa up to
+    // its last 1 bit), so short or exact quotients finish early
+    public int mulInterval = 0;
+    public int divUnits = 0;
+    public boolean divEarlyOut = false;
+
     // Cache
     public int cacheSizeBytes = 1024;
     public int blockSizeBytes = 16;
     public int cacheHitLatency = 2;
     public int cacheMissPenalty = 10;
 
+    // DRAM behind the data cache: 0 channels keeps the constant cacheMissPenalty. Otherwise misses
+    // go to a memory controller (DramController) and free the load/store unit while they wait, so up
+    // to numLoadBuffers can be outstanding (misses to the same block share one request); timings are in cycles
+    public int dramChannels = 0;
+    public int dramBanks = 8;
+    public int dramRowBytes = 2048;
+    public int dramTRCD = 4;        // activate (open a row)
+    public int dramTCAS = 4;        // column access
+    public int dramTRP = 4;         // precharge (close a row)
+    public int dramBurstCycles = 2; // data bus cycles per cache block; sets the bandwidth cap
+    public int dramQueueSize = 16;  // requests visible to the FR-FCFS scheduler
+
+    // Virtual memory: 0 TLB entries translates for free. Otherwise loads and stores look up a data TLB
+    // (Tlb) and a miss walks pageWalkLevels of page table before the cache access, each level costing
+    // pageWalkLatency, or with pageWalkCached a data cache hit or miss for its page table entry
+    public int tlbEntries = 0;
+    public int tlbAssoc = 4;
+    public int pageSizeBytes = 4096;
+    public int pageWalkLevels = 2;
+    public int pageWalkLatency = 10;
+    public boolean pageWalkCached = false;
+
     // sizes
     public int numAddStations = 3;
     public int numMulStations = 2;
     public int numLoadBuffers = 3;
     public int numIntStations = 2;
+
+    // Scheduler: 0 keeps the Add, Mul and Int pools, where every station starts executing as soon as its
+    // operands are ready. A positive windowSize replaces them with one unified issue window of that many
+    // entries (IQ0, IQ1, ...) in front of addUnits, mulUnits and intUnits pipelined functional units.
+    // Each cycle the select logic hands the free units, and the load/store unit, to ready instructions
+    // in selectPolicy order: oldest first, random (seeded), or longest dependence chain in the window first
+    public int windowSize = 0;
+    public int addUnits = 1;
+    public int mulUnits = 1;
+    public int intUnits = 1;
+    public SelectPolicy selectPolicy = SelectPolicy.OLDEST_FIRST;
+    public long selectSeed = 1;
+
+    // Width and ports (defaults model the original single-issue, single-CDB machine)
+    public int issueWidth = 1;    // instructions issued per cycle
+    public int cdbWidth = 1;      // results broadcast per cycle
+    public int regReadPorts = 0;  // register file operand reads per cycle at issue (0 = unlimited)
+    public int regWritePorts = 0; // results written to the register file per cycle (0 = unlimited)
+    public int renameWidth = 0;   // destination tags allocated per cycle (0 = unlimited)
+
+    // Renaming: 0 tags destinations with the producing station; a value above 64 renames them to a
+    // pool of that many physical registers (64 hold the architectural state) with a free list
+    public int physRegs = 0;
+    public int ratCheckpoints = 4; // RAT snapshots for unresolved branches with physRegs (0 = unlimited)
+
+    // Front end: 0 issues straight from the instruction queue; otherwise up to fetchWidth
+    // instructions per cycle are fetched through an instruction cache into a decode queue
+    public int fetchWidth = 0;
+    public int decodeQueueSize = 8;
+    public int icacheSizeBytes = 1024;
+    public int icacheBlockSize = 16;
+    public int icacheAssoc = 1;
+    public int icacheMissPenalty = 10;
+    // Loop buffer (front end only): loops closed by a taken backward branch with at most this many
+    // instructions are replayed from the buffer, bypassing the I-cache (0 = off)
+    public int loopBufferSize = 0;
+    public int loopBufferWidth = 0; // instructions per cycle from the loop buffer (0 = fetchWidth)
+
+    // SMT: hardware threads sharing the stations, units, CDB and cache (load programs with
+    // TomasuloEngine.loadThread), and which thread gets the issue slots first each cycle
+    public int smtThreads = 1;
+    public FetchPolicy fetchPolicy = FetchPolicy.ROUND_ROBIN;
+
+    // Multicore (MulticoreSystem): cycles one coherence transaction holds the shared bus
+    public int busLatency = 4;
+
+    // Record per-instruction issue/execute/writeback cycles in TomasuloEngine.trace (trace-driven runs
+    // keep only the most recent TomasuloEngine.TRACE_RECORDS)
+    public boolean recordPipelineTrace = true;
+    // Keep only about this many TomasuloEngine.history entries (0 = unlimited, or
+    // TomasuloEngine.TRACE_HISTORY for trace-driven runs)
+    public int historyLimit = 0;
 }
@@ -0,0 +1,335 @@
+package com.tomasulo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Data cache miss-ratio curves for every size and associativity from one pass over the load/store
+// address stream (Mattson stack distances), instead of one TomasuloEngine run per cacheSizeBytes.
+// The stack distance of a reference is the number of other blocks used since the last reference to its
+// block; an LRU cache of C blocks hits exactly the references with distance < C.
+// Fully associative: the distance is counted in a Fenwick tree over reference times in which only the
+// latest reference of each block is marked, O(log n) per reference. Set-associative: for every
+// power-of-two set count up to maxSets, each set keeps an LRU stack of its maxAssoc most recent blocks
+// in a primitive array, so the same pass gives every associativity up to maxAssoc (1 = direct-mapped).
+// As in MemoryCache, caches are write-allocate and an access straddling two blocks hits only if both
+// do. Timing is not modelled: a block counts as present from its first reference, not once its miss is paid.
+public class StackDistanceAnalyzer {
+    private static final int COLD = Integer.MAX_VALUE; // distance of a first reference
+    private static final int MIN_SLOTS = 1 << 12;
+
+    public static class Result {
+        public final int blockSizeBytes;
+        public final int maxSets;
+        public final int maxAssoc;
+        public final long accesses;
+        public final long coldMisses;      // first references, i.e. distinct blocks
+        private final long[] fullHits;     // [d] accesses at fully associative distance d
+        private final long[][] setHits;    // [log2 sets - 1][d] accesses at distance d within their set
+
+        Result(int blockSizeBytes, int maxSets, int maxAssoc, long accesses, long coldMisses,
+               long[] fullHits, long[][] setHits) {
+            this.blockSizeBytes = blockSizeBytes;
+            this.maxSets = maxSets;
+            this.maxAssoc = maxAssoc;
+            this.accesses = accesses;
+            this.coldMisses = coldMisses;
+            this.fullHits = fullHits;
+            this.setHits = setHits;
+        }
+
+        // Misses of an LRU cache of cacheSizeBytes with assoc ways; one set is fully associative, with
+        // any number of ways. Otherwise the set count must be a power of two up to maxSets and
+        // assoc at most maxAssoc.
+        public long misses(int cacheSizeBytes, int assoc) {
+            if (assoc <= 0 || cacheSizeBytes % ((long) blockSizeBytes * assoc) != 0) {
+                throw new IllegalArgumentException(cacheSizeBytes + " B is not a whole number of "
+                        + assoc + "-way sets of " + blockSizeBytes + " B blocks");
+            }
+            int sets = (int) (cacheSizeBytes / ((long) blockSizeBytes * assoc));
+            long hits = 0;
+            if (sets == 1) {
+                for (int d = 0; d < Math.min(assoc, fullHits.length); d++) hits += fullHits[d];
+            } else {
+                if (Integer.bitCount(sets) != 1 || sets > maxSets || assoc > maxAssoc) {
+                    throw new IllegalArgumentException(sets + " sets x " + assoc + " ways is outside the analysis ("
+                            + "power-of-two sets up to " + maxSets + ", up to " + maxAssoc + " ways)");
+                }
+                long[] h = setHits[Integer.numberOfTrailingZeros(sets) - 1];
+                for (int d = 0; d < assoc; d++) hits += h[d];
+            }
+            return accesses - hits;
+        }
+
+        public double missRatio(int cacheSizeBytes, int assoc) {
+            return accesses == 0 ? 0.0 : (double) misses(cacheSizeBytes, assoc) / accesses;
+        }
+
+        private boolean covers(long cacheSizeBytes, int assoc) {
+            long sets = cacheSizeBytes / ((long) blockSizeBytes * assoc);
+            return sets >= 1 && cacheSizeBytes % ((long) blockSizeBytes * assoc) == 0
+                    && (sets == 1 || sets <= maxSets && Long.bitCount(sets) == 1 && assoc <= maxAssoc);
+        }
+
+        private long largest() {
+            return (long) blockSizeBytes * maxSets * maxAssoc;
+        }
+
+        // Miss-ratio curve: one row per power-of-two size, one column per power-of-two associativity
+        // and fully associative ("-" where the analysis does not cover the geometry)
+        public String report() {
+            StringBuilder sb = new StringBuilder(toString()).append('\n');
+            sb.append(String.format("%10s", "size (B)"));
+            for (int a = 1; a <= maxAssoc; a *= 2) sb.append(String.format("%9s", a + "-way"));
+            sb.append(String.format("%9s%n", "full"));
+            for (long size = blockSizeBytes; size <= largest(); size *= 2) {
+                sb.append(String.format("%10d", size));
+                for (int a = 1; a <= maxAssoc; a *= 2) {
+                    sb.append(covers(size, a) ? String.format("%9.4f", missRatio((int) size, a)) : String.format("%9s", "-"));
+                }
+                sb.append(String.format("%9.4f%n", missRatio((int) size, (int) (size / blockSizeBytes))));
+            }
+            return sb.toString();
+        }
+
+        // The same curve as size_bytes,assoc,misses,miss_ratio rows (assoc = size / block for fully associative)
+        public String toCsv() {
+            StringBuilder sb = new StringBuilder("size_bytes,assoc,misses,miss_ratio\n");
+            for (long size = blockSizeBytes; size <= largest(); size *= 2) {
+                for (int a = 1; a <= maxAssoc; a *= 2) {
+                    if (covers(size, a)) sb.append(csvRow((int) size, a));
+                }
+                if (size / blockSizeBytes > maxAssoc) sb.append(csvRow((int) size, (int) (size / blockSizeBytes)));
+            }
+            return sb.toString();
+        }
+
+        private String csvRow(int size, int assoc) {
+            return String.format("%d,%d,%d,%.6f%n", size, assoc, misses(size, assoc), missRatio(size, assoc));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stack distance: %d accesses, %d distinct %d B blocks, LRU write-allocate",
+                    accesses, coldMisses, blockSizeBytes);
+        }
+    }
+
+    private final int blockSize;
+    private final int maxSets;
+    private final int maxAssoc;
+
+    // Fully associative stack
+    private final BlockSlots lastRef = new BlockSlots(); // block -> time slot of its latest reference
+    private int[] tree = new int[MIN_SLOTS + 1];          // Fenwick tree over slots, 1 = latest reference of a block
+    private int[] slotBlock = new int[MIN_SLOTS];
+    private int time = 0;
+    private int live = 0;                                  // marked slots, i.e. distinct blocks
+    private long[] fullHits = new long[64];
+
+    // Set-associative stacks per set count 2, 4, ..., maxSets: stacks[l][set * maxAssoc + depth], most recent first
+    private final int[][] stacks;
+    private final int[][] fill;
+    private final long[][] setHits; // [l][d]; d = maxAssoc counts deeper and first references
+    private final int[] levelDist;  // scratch for access()
+
+    private long accesses = 0;
+    private long coldMisses = 0;
+
+    public StackDistanceAnalyzer(int blockSizeBytes, int maxSets, int maxAssoc) {
+        if (blockSizeBytes <= 0 || maxSets <= 0 || Integer.bitCount(maxSets) != 1 || maxAssoc <= 0) {
+            throw new IllegalArgumentException("Bad stack distance geometry: " + blockSizeBytes + " B blocks, "
+                    + maxSets + " sets (power of two), " + maxAssoc + " ways");
+        }
+        this.blockSize = blockSizeBytes;
+        this.maxSets = maxSets;
+        this.maxAssoc = maxAssoc;
+        int levels = Integer.numberOfTrailingZeros(maxSets);
+        stacks = new int[levels][];
+        fill = new int[levels][];
+        setHits = new long[levels][maxAssoc + 1];
+        levelDist = new int[levels];
+        for (int l = 0; l < levels; l++) {
+            stacks[l] = new int[(2 << l) * maxAssoc];
+            fill[l] = new int[2 << l];
+        }
+    }
+
+    // Add the next dynamic instruction; only loads and stores with a known address count
+    // (null uses the instruction's trace address)
+    public void accept(Instruction ins, Integer address) {
+        if (!TomasuloEngine.isLoadOrStore(ins)) return;
+        if (address == null) address = ins.traceAddress;
+        if (address != null) access(address, TomasuloEngine.accessSize(ins));
+    }
+
+    // One data access of size bytes
+    public void access(int address, int size) {
+        int first = address / blockSize, last = (address + size - 1) / blockSize;
+        int full = reference(first, true);
+        if (last != first) full = Math.max(full, reference(last, false));
+        accesses++;
+        if (full == COLD) {
+            coldMisses++;
+        } else {
+            if (full >= fullHits.length) fullHits = Arrays.copyOf(fullHits, Math.max(fullHits.length * 2, full + 1));
+            fullHits[full]++;
+        }
+        for (int l = 0; l < levelDist.length; l++) setHits[l][levelDist[l]]++;
+    }
+
+    // Reference one block in every stack; returns the fully associative distance and leaves the
+    // per-set-count distances in levelDist (reset by the first block of an access, maxed by the second)
+    private int reference(int block, boolean firstOfAccess) {
+        for (int l = 0; l < levelDist.length; l++) {
+            int d = touchSet(l, block);
+            levelDist[l] = firstOfAccess ? d : Math.max(levelDist[l], d);
+        }
+        if (time == slotBlock.length) compact();
+        int slot = lastRef.get(block);
+        int dist;
+        if (slot < 0) {
+            dist = COLD;
+            live++;
+        } else {
+            dist = live - prefix(slot + 1);
+            add(slot + 1, -1);
+        }
+        slotBlock[time] = block;
+        lastRef.put(block, time);
+        add(time + 1, 1);
+        time++;
+        return dist;
+    }
+
+    // Move block to the top of its set's LRU stack; returns its previous depth, or maxAssoc
+    private int touchSet(int l, int block) {
+        int set = block & ((2 << l) - 1);
+        int[] s = stacks[l];
+        int base = set * maxAssoc;
+        int n = fill[l][set];
+        int depth = 0;
+        while (depth < n && s[base + depth] != block) depth++;
+        if (depth == n) {
+            if (n < maxAssoc) fill[l][set] = n + 1;
+            else depth = maxAssoc - 1; // the least recently used block drops out
+            System.arraycopy(s, base, s, base + 1, depth);
+            s[base] = block;
+            return maxAssoc;
+        }
+        System.arraycopy(s, base, s, base + 1, depth);
+        s[base] = block;
+        return depth;
+    }
+
+    // Renumber the latest references 0..live-1 in time order and size the tree for at least as many
+    // new references again
+    private void compact() {
+        int slots = Math.max(MIN_SLOTS, Integer.highestOneBit(Math.max(1, live)) * 4);
+        int[] blocks = new int[slots];
+        int n = 0;
+        for (int t = 0; t < time; t++) {
+            int b = slotBlock[t];
+            if (lastRef.get(b) == t) {
+                blocks[n] = b;
+                lastRef.put(b, n);
+                n++;
+            }
+        }
+        slotBlock = blocks;
+        tree = new int[slots + 1];
+        for (int i = 1; i <= n; i++) tree[i] = 1;
+        for (int i = 1; i <= slots; i++) {
+            int parent = i + (i & -i);
+            if (parent <= slots) tree[parent] += tree[i];
+        }
+        time = n;
+    }
+
+    private void add(int i, int v) {
+        for (; i < tree.length; i += i & -i) tree[i] += v;
+    }
+
+    private int prefix(int i) {
+        int sum = 0;
+        for (; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+
+    public Result result() {
+        long[][] copy = new long[setHits.length][];
+        for (int l = 0; l < setHits.length; l++) copy[l] = setHits[l].clone();
+        return new Result(blockSize, maxSets, maxAssoc, accesses, coldMisses, fullHits.clone(), copy);
+    }
+
+    // Whole dynamic trace; the caller owns (and closes) the source
+    public Result run(InstructionSource src) {
+        for (Instruction ins = src.peek(); ins != null; ins = src.peek()) {
+            accept(ins, null);
+            src.advance();
+        }
+        return result();
+    }
+
+    // Static program from the given registers and memory (which it modifies), executed by
+    // ReferenceInterpreter for at most maxInstructions dynamic instructions
+    public Result run(List<Instruction> program, Map<String, Long> regs, MainMemory memory, long maxInstructions) {
+        ReferenceInterpreter ref = new ReferenceInterpreter(program, regs, memory);
+        for (long i = 0; i < maxInstructions; i++) {
+            Instruction ins = ref.next();
+            if (ins == null) break;
+            ref.execute(ins);
+            accept(ins, ref.lastAddress);
+        }
+        return result();
+    }
+
+    // Open-addressing block -> slot map on primitive arrays; -1 = absent
+    private static final class BlockSlots {
+        private int[] keys = new int[1 << 12];
+        private int[] vals = new int[1 << 12];
+        private int size = 0;
+
+        BlockSlots() {
+            Arrays.fill(vals, -1);
+        }
+
+        private int indexOf(int key, int[] k, int[] v) {
+            int mask = k.length - 1;
+            int h = key * 0x9E3779B9;
+            int i = (h ^ h >>> 16) & mask;
+            while (v[i] >= 0 && k[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+
+        int get(int key) {
+            return vals[indexOf(key, keys, vals)];
+        }
+
+        void put(int key, int value) {
+            int i = indexOf(key, keys, vals);
+            if (vals[i] < 0) {
+                if (++size * 2 > keys.length) {
+                    grow();
+                    i = indexOf(key, keys, vals);
+                }
+                keys[i] = key;
+            }
+            vals[i] = value;
+        }
+
+        private void grow() {
+            int[] k = new int[keys.length * 2], v = new int[keys.length * 2];
+            Arrays.fill(v, -1);
+            for (int i = 0; i < keys.length; i++) {
+                if (vals[i] >= 0) {
+                    int j = indexOf(keys[i], k, v);
+                    k[j] = keys[i];
+                    v[j] = vals[i];
+                }
+            }
+            keys = k;
+            vals = v;
+        }
+    }
+}
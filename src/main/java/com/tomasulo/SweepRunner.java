@@ -0,0 +1,132 @@
+package com.tomasulo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// Runs many independent (program, config) points on a thread pool. Every point gets its own engine,
+// so results do not depend on thread count or scheduling, and come back in input order.
+// With a ResultCache, points identical to an earlier run are restored instead of simulated.
+public class SweepRunner {
+    public static class Point {
+        public final String name;
+        public final List<Instruction> program;
+        public final SimulatorConfig cfg;
+        public final Consumer<TomasuloEngine> setup; // initial registers/memory; may be null
+        public final long maxCycles;
+
+        public Point(String name, List<Instruction> program, SimulatorConfig cfg,
+                     Consumer<TomasuloEngine> setup, long maxCycles) {
+            this.name = name;
+            this.program = program;
+            this.cfg = cfg;
+            this.setup = setup;
+            this.maxCycles = maxCycles;
+        }
+    }
+
+    public static class Result {
+        public final Point point;
+        public final TomasuloEngine engine; // final state, including engine.counters
+        public final boolean finished;      // false if maxCycles was reached first
+        public final boolean cached;
+        public final String divergence;     // first co-simulation mismatch, or null
+
+        Result(Point point, TomasuloEngine engine, boolean cached, String divergence) {
+            this.point = point;
+            this.engine = engine;
+            this.finished = engine.isIdle();
+            this.cached = cached;
+            this.divergence = divergence;
+        }
+    }
+
+    private final int threads;
+    private final ResultCache cache; // may be null
+    private boolean coSim = false;
+
+    public SweepRunner(int threads, ResultCache cache) {
+        this.threads = Math.max(1, threads);
+        this.cache = cache;
+    }
+
+    // Check every simulated point against ReferenceInterpreter. Diverging results are not cached;
+    // cache hits are not re-checked.
+    public SweepRunner setCoSim(boolean on) {
+        coSim = on;
+        return this;
+    }
+
+    public List<Result> run(List<Point> points) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "tomasulo-sweep");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Point p : points) futures.add(pool.submit(() -> runPoint(p)));
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Dataflow limit of a point's program from the same initial state, to set r.engine.counters.ipc()
+    // against; maxInstructions bounds programs that do not terminate
+    public static DataflowAnalyzer.Result dataflowLimit(Point p, long maxInstructions) {
+        TomasuloEngine engine = new TomasuloEngine(p.cfg);
+        if (p.setup != null) p.setup.accept(engine);
+        return DataflowAnalyzer.analyze(p.program, engine.registers.toBits(), engine.cache.getMemory().copy(),
+                p.cfg, maxInstructions);
+    }
+
+    // Data cache miss-ratio curve of a point's program for every size and associativity up to maxSets
+    // sets of maxAssoc ways, from one functional pass instead of a sweep over cacheSizeBytes
+    public static StackDistanceAnalyzer.Result missRatioCurve(Point p, long maxInstructions, int maxSets, int maxAssoc) {
+        TomasuloEngine engine = new TomasuloEngine(p.cfg);
+        if (p.setup != null) p.setup.accept(engine);
+        return new StackDistanceAnalyzer(p.cfg.blockSizeBytes, maxSets, maxAssoc).run(p.program,
+                engine.registers.toBits(), engine.cache.getMemory().copy(), maxInstructions);
+    }
+
+    public Result runPoint(Point p) {
+        TomasuloEngine engine = new TomasuloEngine(p.cfg);
+        if (p.setup != null) p.setup.accept(engine);
+        engine.loadInstructions(p.program);
+        try {
+            String key = null;
+            if (cache != null && engine.getThreadCount() == 1) { // SMT runs cannot be checkpointed
+                key = ResultCache.key(engine, p.maxCycles);
+                byte[] hit = cache.get(key);
+                if (hit != null) return new Result(p, EngineCheckpoint.fork(hit, p.cfg), true, null);
+            }
+            CoSimChecker checker = coSim ? CoSimChecker.attach(engine) : null;
+            while (!engine.isIdle() && engine.cycle < p.maxCycles && (checker == null || !checker.hasDiverged())) {
+                engine.step();
+            }
+            String divergence = null;
+            if (checker != null) {
+                divergence = engine.isIdle() ? checker.finish(engine) : checker.getDivergence();
+                engine.setObserver(null);
+            }
+            if (key != null && divergence == null) cache.put(key, EngineCheckpoint.toBytes(engine));
+            return new Result(p, engine, false, divergence);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.tomasulo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Set-associative data TLB with LRU replacement (SimulatorConfig.tlbEntries > 0). Translation is the
+// identity, so only virtual page numbers are modelled; a miss costs a page walk, which TomasuloEngine
+// charges before the data cache access.
+// Page tables are radix trees of 8-byte entries in a reserved region starting at PAGE_TABLE_BASE:
+// each level indexes pageSize / 8 entries and has its own window of the region, so neighbouring pages
+// share upper-level entries and leaf entries sit next to each other, as in a real table.
+public class Tlb {
+    public static final int PAGE_TABLE_BASE = 0x40000000;
+    private static final int LEVEL_STRIDE = 1 << 27; // bytes of the region per walk level
+    private static final int PTE_BYTES = 8;
+
+    private final int sets;
+    private final int ways;
+    private final int pageBits;
+    private final int indexBits; // virtual page number bits resolved per walk level
+    private final int[] tags;    // [set * ways + way] virtual page number, -1 = invalid
+    private final long[] lastUse;
+    private long accesses = 0;
+
+    public Tlb(int entries, int ways, int pageSizeBytes) {
+        if (ways <= 0 || entries < ways || entries % ways != 0) {
+            throw new IllegalArgumentException("Bad TLB geometry: " + entries + " entries, " + ways + " ways");
+        }
+        if (pageSizeBytes < 256 || Integer.bitCount(pageSizeBytes) != 1) {
+            throw new IllegalArgumentException("Page size must be a power of two of at least 256 B, got " + pageSizeBytes);
+        }
+        this.ways = ways;
+        this.sets = entries / ways;
+        this.pageBits = Integer.numberOfTrailingZeros(pageSizeBytes);
+        this.indexBits = pageBits - Integer.numberOfTrailingZeros(PTE_BYTES);
+        tags = new int[sets * ways];
+        lastUse = new long[sets * ways];
+        Arrays.fill(tags, -1);
+    }
+
+    public int pageOf(int address) {
+        return address >>> pageBits;
+    }
+
+    // Look up the page holding address; a miss fills it, replacing the least recently used way
+    public boolean access(int address) {
+        int page = pageOf(address);
+        int base = (page % sets) * ways;
+        accesses++;
+        int victim = base;
+        for (int i = base; i < base + ways; i++) {
+            if (tags[i] == page) {
+                lastUse[i] = accesses;
+                return true;
+            }
+            if (lastUse[i] < lastUse[victim]) victim = i;
+        }
+        tags[victim] = page;
+        lastUse[victim] = accesses;
+        return false;
+    }
+
+    // Address of the entry a walk reads at level (0 = root) of a table with the given depth
+    public int pteAddress(int address, int level, int levels) {
+        int shift = indexBits * (levels - 1 - level);
+        int entry = shift >= 32 ? 0 : pageOf(address) >>> shift;
+        return PAGE_TABLE_BASE + level * LEVEL_STRIDE + (entry * PTE_BYTES) % LEVEL_STRIDE;
+    }
+
+    // Checkpoint support
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(sets);
+        out.writeInt(ways);
+        out.writeInt(pageBits);
+        out.writeLong(accesses);
+        for (int i = 0; i < tags.length; i++) {
+            out.writeInt(tags[i]);
+            out.writeLong(lastUse[i]);
+        }
+    }
+
+    void readState(DataInputStream in) throws IOException {
+        int s = in.readInt(), w = in.readInt(), p = in.readInt();
+        if (s != sets || w != ways || p != pageBits) {
+            throw new IOException("Checkpoint TLB geometry (" + s + " sets x " + w + " ways, " + (1 << p)
+                    + " B pages) does not match config (" + sets + " sets x " + ways + " ways, " + (1 << pageBits) + " B pages)");
+        }
+        accesses = in.readLong();
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = in.readInt();
+            lastUse[i] = in.readLong();
+        }
+    }
+}
@@ -5,48 +5,222 @@ import java.util.*;
 // Enhanced Tomasulo engine with full load/store/branch support
 public class TomasuloEngine {
     public final SimulatorConfig cfg;
-    public final List<Instruction> instrQueue = new ArrayList<>();
+    public final InstructionQueue instrQueue = new InstructionQueue();
     public final List<ReservationStation> addStations = new ArrayList<>();
     public final List<ReservationStation> mulStations = new ArrayList<>();
     public final List<ReservationStation> intStations = new ArrayList<>();
     public final List<ReservationStation> loadBuffers = new ArrayList<>();
+    public final List<ReservationStation> windowStations = new ArrayList<>(); // unified issue window (cfg.windowSize > 0)
     public final RegisterFile registers = new RegisterFile();
     public final MemoryCache cache;
+    public final PerfCounters counters;
+    public final PipelineTrace trace; // per dynamic instruction timing
+    public final PhysicalRegisterFile physRegFile; // null unless cfg.physRegs > 0 (station-tag renaming)
+    private final List<ReservationStation> allStations = new ArrayList<>(); // Window or Add, Mul, Int; then Load
+    private long selectRng; // xorshift state of the RANDOM select policy
+    // Modelled multipliers and dividers (cfg.mulInterval, cfg.divUnits): first cycle each accepts an operation
+    private final long[] mulFree, divFree;
+    public final List<HardwareThread> smtThreads = new ArrayList<>(); // SMT threads 1..cfg.smtThreads-1
+    private int fetchRotor = 0; // SMT: thread with first issue priority this cycle (round-robin)
 
-    public int cycle = 0;
+    // Front end (cfg.fetchWidth > 0): fetched instructions wait in decodeQueue until they issue
+    public final ArrayDeque<Instruction> decodeQueue = new ArrayDeque<>();
+    public final InstructionCache icache; // null without a front end
+    public final Tlb tlb;                 // data TLB; null when translation is free (cfg.tlbEntries = 0)
+    private int fetchStall = 0;           // cycles left on an I-cache miss
+    // Loop buffer (cfg.loopBufferSize > 0): static range of the last short loop closed by a taken
+    // backward branch, replayed by fetch without the I-cache; -1 when empty
+    private int loopStart = -1, loopEnd = -1;
+
+    public long cycle = 0;
     public final List<String> history = new ArrayList<>();
-    public int pc = 0; // program counter for branch handling
-    private int issuedCount = 0; // track how many instructions have been issued
+    public int pc = 0; // program counter for branch handling: index of the next instruction to issue
+    private long issuedCount = 0; // track how many instructions have been issued
     private final List<Instruction> originalProgram = new ArrayList<>();
+    private ChangeSet pending = new ChangeSet(); // changes since the last drainChanges()
+    private long historyDropped = 0; // entries trimmed from the front of history (cfg.historyLimit)
+
+    // Trace-driven mode: instructions come from a streamed dynamic trace instead of instrQueue
+    static final int TRACE_RECORDS = 1 << 16;  // pipeline trace records kept in trace mode
+    static final int TRACE_HISTORY = 10_000;   // history entries kept in trace mode without cfg.historyLimit
+    private boolean traceMode = false;
+    private InstructionSource source; // null in trace mode until attached (e.g. after a restore)
+    private long traceConsumed = 0;   // trace instructions issued (or fetched, with a front end) so far
+
+    // Per-cycle activity flags feeding the counters and CPI stack
+    private boolean wroteBack, missActive, execActive, issueBlocked;
+    private boolean issueSuppressed = false; // set while drainPipeline() empties the stations
+    private int readsThisCycle, renamesThisCycle; // register read ports / rename slots used by issue
+    private EngineObserver observer; // e.g. a CoSimChecker; null when unused
 
     public TomasuloEngine(SimulatorConfig cfg) {
+        this(cfg, null);
+    }
+
+    // With sharedMemory the data cache sits over that memory as it is (a MulticoreSystem core);
+    // otherwise the engine gets its own memory with the demo data
+    public TomasuloEngine(SimulatorConfig cfg, MainMemory sharedMemory) {
         this.cfg = cfg;
-        for (int i = 0; i < cfg.numAddStations; i++) addStations.add(new ReservationStation("Add" + i));
-        for (int i = 0; i < cfg.numMulStations; i++) mulStations.add(new ReservationStation("Mul" + i));
-        for (int i = 0; i < cfg.numIntStations; i++) intStations.add(new ReservationStation("Int" + i));
+        if (cfg.windowSize > 0) {
+            for (int i = 0; i < cfg.windowSize; i++) windowStations.add(new ReservationStation("IQ" + i));
+        } else {
+            for (int i = 0; i < cfg.numAddStations; i++) addStations.add(new ReservationStation("Add" + i));
+            for (int i = 0; i < cfg.numMulStations; i++) mulStations.add(new ReservationStation("Mul" + i));
+            for (int i = 0; i < cfg.numIntStations; i++) intStations.add(new ReservationStation("Int" + i));
+        }
         for (int i = 0; i < cfg.numLoadBuffers; i++) loadBuffers.add(new ReservationStation("Load" + i));
-        this.cache = new MemoryCache(cfg.cacheSizeBytes, cfg.blockSizeBytes, cfg.cacheHitLatency, cfg.cacheMissPenalty);
+        this.cache = sharedMemory == null
+            ? new MemoryCache(cfg.cacheSizeBytes, cfg.blockSizeBytes, cfg.cacheHitLatency, cfg.cacheMissPenalty)
+            : new MemoryCache(cfg.cacheSizeBytes, cfg.blockSizeBytes, cfg.cacheHitLatency, cfg.cacheMissPenalty, sharedMemory);
+        if (sharedMemory == null && cfg.dramChannels > 0) cache.setDram(new DramController(cfg));
+        this.counters = new PerfCounters(cfg);
+        this.physRegFile = cfg.physRegs > 0 ? new PhysicalRegisterFile(cfg.physRegs) : null;
+        if (cfg.smtThreads > 1 && physRegFile != null) {
+            throw new IllegalArgumentException("Physical register renaming does not support SMT");
+        }
+        for (int t = 1; t < cfg.smtThreads; t++) smtThreads.add(new HardwareThread(t));
+        if (cfg.fetchWidth > 0 && cfg.smtThreads > 1) {
+            throw new IllegalArgumentException("The fetch front end does not support SMT");
+        }
+        this.icache = cfg.fetchWidth > 0 ? new InstructionCache(cfg.icacheSizeBytes, cfg.icacheBlockSize, cfg.icacheAssoc) : null;
+        this.tlb = cfg.tlbEntries > 0 ? new Tlb(cfg.tlbEntries, cfg.tlbAssoc, cfg.pageSizeBytes) : null;
+        if (tlb != null && cfg.pageWalkCached && sharedMemory != null) {
+            throw new IllegalArgumentException("Cached page walks are not supported in multicore mode");
+        }
+        this.selectRng = cfg.selectSeed != 0 ? cfg.selectSeed : 1;
+        this.mulFree = new long[cfg.mulInterval > 0 ? Math.max(1, cfg.mulUnits) : 0];
+        this.divFree = new long[Math.max(0, cfg.divUnits)];
+        allStations.addAll(windowStations);
+        allStations.addAll(addStations); allStations.addAll(mulStations);
+        allStations.addAll(intStations); allStations.addAll(loadBuffers);
+        this.trace = new PipelineTrace(PipelineTrace.namesOf(allStations));
     }
 
     public void loadInstructions(List<Instruction> ins) {
         instrQueue.clear();
-        instrQueue.addAll(ins);
         originalProgram.clear();
         originalProgram.addAll(ins);
+        instrQueue.reload(originalProgram, 0);
         pc = 0;
         issuedCount = 0;
+        decodeQueue.clear();
+        fetchStall = 0;
+        loopStart = loopEnd = -1;
+        trace.clear();
+        traceMode = false;
+        trace.setLimit(0);
+        source = null;
+        pending.queueChanged = true;
+    }
+
+    // SMT: load the program of hardware thread t (thread 0 is loadInstructions())
+    public void loadThread(int t, List<Instruction> ins) {
+        if (t == 0) loadInstructions(ins);
+        else smtThreads.get(t - 1).loadInstructions(ins);
+    }
+
+    public int getThreadCount() { return 1 + smtThreads.size(); }
+
+    public RegisterFile registersOf(int t) {
+        return t == 0 ? registers : smtThreads.get(t - 1).registers;
+    }
+
+    // Run from a dynamic trace: effective addresses and branch outcomes come from the trace, so
+    // branches never redirect fetch. The caller owns (and closes) the source.
+    // Memory stays constant however long the trace: the pipeline trace keeps its last TRACE_RECORDS
+    // records and the history its last cfg.historyLimit (default TRACE_HISTORY) entries.
+    public void loadTrace(InstructionSource src) {
+        loadInstructions(Collections.emptyList());
+        traceMode = true;
+        trace.setLimit(TRACE_RECORDS);
+        source = src;
+        traceConsumed = 0;
+    }
+
+    // Re-attach a trace positioned at getTraceConsumed(), e.g. after restoring a checkpoint
+    public void resumeTrace(InstructionSource src) {
+        traceMode = true;
+        trace.setLimit(TRACE_RECORDS);
+        source = src;
+    }
+
+    public void setObserver(EngineObserver o) { observer = o; }
+    public EngineObserver getObserver() { return observer; }
+
+    public boolean isTraceMode() { return traceMode; }
+    public long getTraceConsumed() { return traceConsumed; }
+    void setTraceState(boolean mode, long consumed) {
+        traceMode = mode;
+        traceConsumed = consumed;
+        trace.setLimit(mode ? TRACE_RECORDS : 0);
+    }
+
+    // Number of history entries trimmed so far; history.get(i) is logical entry getHistoryDropped() + i
+    public long getHistoryDropped() { return historyDropped; }
+
+    // Head of whichever instruction stream is active, or null if there is nothing to issue
+    private Instruction nextInstruction() {
+        if (icache != null) return decodeQueue.peek();
+        return fetchHead();
+    }
+
+    // Next instruction not yet fetched (with a front end) or issued (without one)
+    private Instruction fetchHead() {
+        if (traceMode) return source == null ? null : source.peek();
+        return instrQueue.isEmpty() ? null : instrQueue.get(0);
+    }
+
+    // Same for SMT thread t; extra threads always run static programs
+    private Instruction nextInstruction(int t) {
+        if (t == 0) return nextInstruction();
+        List<Instruction> q = smtThreads.get(t - 1).instrQueue;
+        return q.isEmpty() ? null : q.get(0);
+    }
+
+    // Return everything touched since the previous call (possibly several cycles) and start a new set
+    public ChangeSet drainChanges() {
+        ChangeSet c = pending;
+        registers.drainDirty(c.registers);
+        cache.drainDirty(c.cacheLines, c.memoryWords);
+        pending = new ChangeSet();
+        return c;
+    }
+
+    // Accessors used by EngineCheckpoint
+    long getIssuedCount() { return issuedCount; }
+    void setIssuedCount(long n) { issuedCount = n; }
+    List<Instruction> getOriginalProgram() { return originalProgram; }
+    int getFetchStall() { return fetchStall; }
+    void setFetchStall(int n) { fetchStall = n; }
+    int getLoopStart() { return loopStart; }
+    int getLoopEnd() { return loopEnd; }
+    long getSelectRng() { return selectRng; }
+    long[] getMulFree() { return mulFree; }
+    long[] getDivFree() { return divFree; }
+    void setSelectRng(long state) { selectRng = state; }
+    void setLoopBuffer(int start, int end) { loopStart = start; loopEnd = end; }
+
+    // True when nothing is left to issue and every station is free
+    public boolean isIdle() {
+        if (nextInstruction() != null || fetchHead() != null) return false;
+        for (HardwareThread h : smtThreads) if (!h.instrQueue.isEmpty()) return false;
+        for (ReservationStation rs : allStations) if (rs.busy) return false;
+        return true;
     }
 
     // Very simplified: each cycle we try to issue 1 instruction, then update executing stations, then writeback at most 1 result.
     public void step() {
         cycle++;
         history.add("Cycle " + cycle + ": start");
+        wroteBack = missActive = execActive = issueBlocked = false;
         
         // Clear justIssued flags from previous cycle
-        List<ReservationStation> all = new ArrayList<>();
-        all.addAll(addStations); all.addAll(mulStations); all.addAll(intStations); all.addAll(loadBuffers);
+        List<ReservationStation> all = allStations;
         for (ReservationStation rs : all) {
-            if (rs.busy) rs.justIssued = false;
+            if (rs.busy) {
+                rs.justIssued = false;
+                pending.stations.add(rs.name); // busy stations may change this cycle
+            }
         }
         
         // Phase 1: Writeback (broadcast results from previous cycle)
@@ -55,21 +229,165 @@ public class TomasuloEngine {
         // Phase 2: Issue new instruction
         issueStep();
         
+        // Phase 2b: Fetch into the decode queue; fetched instructions issue from next cycle on
+        if (icache != null) fetchStep();
+
+        // Memory controller delivers fills due this cycle
+        cache.tick(cycle);
+
         // Phase 3: Execute (start execution for ready instructions, decrement counters)
         executeStep();
+
+        // Stations issued this cycle were idle at the start
+        for (ReservationStation rs : all) {
+            if (rs.busy) pending.stations.add(rs.name);
+        }
+
+        updateCounters();
         
         history.add("Cycle " + cycle + ": end");
+        trimHistory();
+    }
+
+    // Keep at most cfg.historyLimit entries (trimmed in batches so removal stays amortized O(1));
+    // trace-driven runs are always bounded
+    private void trimHistory() {
+        int limit = traceMode && cfg.historyLimit <= 0 ? TRACE_HISTORY : cfg.historyLimit;
+        if (limit <= 0 || history.size() <= 2 * limit) return;
+        int drop = history.size() - limit;
+        history.subList(0, drop).clear();
+        historyDropped += drop;
+    }
+
+    private void updateCounters() {
+        PerfCounters c = counters;
+        c.cycles++;
+        int addBusy = countBusy(addStations), mulBusy = countBusy(mulStations);
+        int intBusy = countBusy(intStations), loadBusy = countBusy(loadBuffers);
+        int windowBusy = countBusy(windowStations);
+        c.addOccupancy[addBusy]++;
+        c.mulOccupancy[mulBusy]++;
+        c.intOccupancy[intBusy]++;
+        c.loadOccupancy[loadBusy]++;
+        if (!windowStations.isEmpty()) c.windowOccupancy[windowBusy]++;
+        if (missActive) c.cacheMissCycles++;
+        if (physRegFile != null) c.physRegsInUse += physRegFile.inUse();
+
+        boolean branchPending = false, waitingOperands = false;
+        for (ReservationStation rs : allStations) {
+            if (!rs.busy) continue;
+            if (rs.inst.type == InstructionType.BEQ || rs.inst.type == InstructionType.BNE) branchPending = true;
+            if (rs.qj != null || rs.qk != null) waitingOperands = true;
+        }
+        if (branchPending) c.branchWaitCycles++;
+
+        int cause;
+        if (wroteBack) cause = PerfCounters.CPI_BASE;
+        else if (missActive) cause = PerfCounters.CPI_MEMORY;
+        else if (execActive) cause = PerfCounters.CPI_EXECUTE;
+        else if (branchPending && nextInstruction(0) == null) cause = PerfCounters.CPI_BRANCH;
+        else if (issueBlocked) cause = PerfCounters.CPI_STRUCTURAL;
+        else if (waitingOperands) cause = PerfCounters.CPI_DEPENDENCY;
+        else if (addBusy + mulBusy + intBusy + loadBusy + windowBusy > 0) cause = PerfCounters.CPI_EXECUTE; // issue-to-execute / CDB latency
+        else cause = PerfCounters.CPI_FRONTEND;
+        c.cpiStack[cause]++;
+    }
+
+    private static int countBusy(List<ReservationStation> pool) {
+        int n = 0;
+        for (ReservationStation rs : pool) if (rs.busy) n++;
+        return n;
     }
 
+    // Issue up to cfg.issueWidth instructions in order, stopping at the first that cannot issue
     private void issueStep() {
-        if (instrQueue.isEmpty()) return;
-        Instruction ins = instrQueue.get(0);
+        if (issueSuppressed) return;
+        readsThisCycle = renamesThisCycle = 0;
+        if (smtThreads.isEmpty()) {
+            for (int k = 0; k < cfg.issueWidth; k++) {
+                if (!issueOne(0)) break;
+            }
+            return;
+        }
+        // SMT: fill the issue slots from the threads in priority order; a thread that cannot
+        // issue gives its remaining slots to the next one
+        int slots = cfg.issueWidth;
+        for (int t : fetchOrder()) {
+            while (slots > 0 && issueOne(t)) slots--;
+            if (slots == 0) break;
+        }
+    }
+
+    // SMT issue priority. Round-robin rotates the first thread every cycle; ICOUNT prefers the
+    // threads with the fewest instructions in the stations, breaking ties in round-robin order.
+    private Integer[] fetchOrder() {
+        int n = getThreadCount();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = (fetchRotor + i) % n;
+        fetchRotor = (fetchRotor + 1) % n;
+        if (cfg.fetchPolicy == SimulatorConfig.FetchPolicy.ICOUNT) {
+            int[] inFlight = new int[n];
+            for (ReservationStation rs : allStations) if (rs.busy) inFlight[rs.thread]++;
+            Arrays.sort(order, Comparator.comparingInt(t -> inFlight[t])); // stable
+        }
+        return order;
+    }
+
+    private boolean issueOne(int thread) {
+        Instruction ins = nextInstruction(thread);
+        RegisterFile regs = registersOf(thread);
+        if (ins == null) {
+            counters.stallEmptyQueue++;
+            return false;
+        }
         // decide station
         List<ReservationStation> pool = selectPool(ins);
-        if (pool == null) return; // unsupported
+        if (pool == null) return false; // unsupported
         ReservationStation free = null;
         for (ReservationStation rs : pool) if (!rs.busy) { free = rs; break; }
-        if (free == null) return; // stall
+        if (free == null) { // stall
+            issueBlocked = true;
+            if (pool == windowStations) counters.stallWindowFull++;
+            else if (pool == addStations) counters.stallNoAddStation++;
+            else if (pool == mulStations) counters.stallNoMulStation++;
+            else if (pool == intStations) counters.stallNoIntStation++;
+            else counters.stallNoLoadBuffer++;
+            return false;
+        }
+
+        // Register file read ports: operands without a pending tag are read at issue.
+        // An instruction needing more reads than there are ports may issue alone in a cycle.
+        int reads = 0;
+        if (ins.src1 != null && regs.getTag(ins.src1) == null) reads++;
+        if (ins.src2 != null && regs.getTag(ins.src2) == null) reads++;
+        if (cfg.regReadPorts > 0 && readsThisCycle > 0 && readsThisCycle + reads > cfg.regReadPorts) {
+            issueBlocked = true;
+            counters.stallRegReadPorts++;
+            return false;
+        }
+        // Rename bandwidth: destination tags allocated per cycle
+        boolean renames = writesRegister(ins);
+        if (renames && cfg.renameWidth > 0 && renamesThisCycle == cfg.renameWidth) {
+            issueBlocked = true;
+            counters.stallRenameWidth++;
+            return false;
+        }
+        // Physical register renaming needs a free register and, for branches, a RAT snapshot
+        boolean branch = ins.type == InstructionType.BEQ || ins.type == InstructionType.BNE;
+        if (physRegFile != null) {
+            if (renames && !"R0".equals(ins.dest) && !physRegFile.hasFree()) {
+                issueBlocked = true;
+                counters.stallFreeList++;
+                return false;
+            }
+            if (branch && !physRegFile.canSnapshot(cfg.ratCheckpoints)) {
+                issueBlocked = true;
+                counters.stallRatCheckpoints++;
+                return false;
+            }
+        }
+        readsThisCycle += reads;
+        if (renames) renamesThisCycle++;
 
         // perform register renaming
         free.busy = true;
@@ -78,6 +396,15 @@ public class TomasuloEngine {
         free.writebackPending = false;
         free.addressReady = false;
         free.justIssued = true; // Mark as just issued to prevent execution this cycle
+        free.thread = thread;
+        // Records carry the index in the issuing thread's program; trace-driven records have none
+        if (cfg.recordPipelineTrace) {
+            int programIndex = thread > 0 ? smtThreads.get(thread - 1).issuedCount : traceMode ? -1 : (int) issuedCount;
+            free.traceId = trace.recordIssue(thread, programIndex, ins, allStations.indexOf(free), cycle);
+        } else {
+            free.traceId = -1;
+        }
+        free.seq = counters.issued;
         
         // For loads/stores and branches, handle base register
         if (ins.type == InstructionType.LD || ins.type == InstructionType.LW || 
@@ -86,47 +413,47 @@ public class TomasuloEngine {
             ins.type == InstructionType.S_S || ins.type == InstructionType.S_D || ins.type == InstructionType.S_W) {
             // src1 is base register for address calculation
             if (ins.src1 != null) {
-                String t = registers.getTag(ins.src1);
-                if (t != null) free.qj = t; else free.vj = registers.get(ins.src1);
+                String t = regs.getTag(ins.src1);
+                if (t != null) free.qj = t; else free.vj = regs.getBits(ins.src1);
             }
             // For stores, src2 is the value to store
             if (ins.type == InstructionType.SD || ins.type == InstructionType.SW ||
                 ins.type == InstructionType.S_S || ins.type == InstructionType.S_D || ins.type == InstructionType.S_W) {
                 if (ins.src2 != null) {
-                    String t = registers.getTag(ins.src2);
-                    if (t != null) free.qk = t; else free.vk = registers.get(ins.src2);
+                    String t = regs.getTag(ins.src2);
+                    if (t != null) free.qk = t; else free.vk = regs.getBits(ins.src2);
                 }
             }
         } else if (ins.type == InstructionType.BEQ || ins.type == InstructionType.BNE) {
             // Branches need both source registers
             if (ins.src1 != null) {
-                String t = registers.getTag(ins.src1);
-                if (t != null) free.qj = t; else free.vj = registers.get(ins.src1);
+                String t = regs.getTag(ins.src1);
+                if (t != null) free.qj = t; else free.vj = regs.getBits(ins.src1);
             }
             if (ins.src2 != null) {
-                String t = registers.getTag(ins.src2);
-                if (t != null) free.qk = t; else free.vk = registers.get(ins.src2);
+                String t = regs.getTag(ins.src2);
+                if (t != null) free.qk = t; else free.vk = regs.getBits(ins.src2);
             }
         } else if (ins.type == InstructionType.ADDI || ins.type == InstructionType.SUBI ||
                    ins.type == InstructionType.DADDI || ins.type == InstructionType.DSUBI) {
             // Integer immediate instructions: src1 is register, immediate goes to Vk
             if (ins.src1 != null) {
-                String t = registers.getTag(ins.src1);
-                if (t != null) free.qj = t; else free.vj = registers.get(ins.src1);
+                String t = regs.getTag(ins.src1);
+                if (t != null) free.qj = t; else free.vj = regs.getBits(ins.src1);
             }
             // Put immediate value directly in Vk (no dependency)
             if (ins.immediate != null) {
-                free.vk = ins.immediate;
+                free.vk = (long) ins.immediate;
             }
         } else {
             // Regular ALU ops: sources
             if (ins.src1 != null) {
-                String t = registers.getTag(ins.src1);
-                if (t != null) free.qj = t; else free.vj = registers.get(ins.src1);
+                String t = regs.getTag(ins.src1);
+                if (t != null) free.qj = t; else free.vj = regs.getBits(ins.src1);
             }
             if (ins.src2 != null) {
-                String t = registers.getTag(ins.src2);
-                if (t != null) free.qk = t; else free.vk = registers.get(ins.src2);
+                String t = regs.getTag(ins.src2);
+                if (t != null) free.qk = t; else free.vk = regs.getBits(ins.src2);
             }
         }
         
@@ -135,18 +462,209 @@ public class TomasuloEngine {
             ins.type != InstructionType.SD && ins.type != InstructionType.SW &&
             ins.type != InstructionType.S_S && ins.type != InstructionType.S_D && ins.type != InstructionType.S_W &&
             ins.type != InstructionType.BEQ && ins.type != InstructionType.BNE) {
-            registers.setTag(ins.dest, free.name);
+            if (physRegFile == null) {
+                regs.setTag(ins.dest, free.name);
+            } else if (!"R0".equals(ins.dest)) {
+                free.prevPhys = physRegFile.lookup(ins.dest);
+                free.physDest = physRegFile.allocate(ins.dest);
+                regs.setTag(ins.dest, PhysicalRegisterFile.name(free.physDest));
+            }
         }
+        if (branch && physRegFile != null) physRegFile.takeSnapshot(free.seq);
 
         // set basic remaining cycles
-        free.remaining = estimateLatency(ins);
+        free.remaining = estimateLatency(cfg, ins);
 
-        history.add("Issued " + ins + " to " + free.name);
-        instrQueue.remove(0);
+        history.add("Issued " + ins + " to " + free.name + (smtThreads.isEmpty() ? "" : " (thread " + thread + ")"));
+        counters.threadIssued[thread]++;
+        if (thread > 0) {
+            HardwareThread h = smtThreads.get(thread - 1);
+            h.instrQueue.remove(0);
+            h.issuedCount++;
+            h.pc = h.issuedCount;
+            counters.issued++;
+            return true;
+        }
+        if (observer != null) observer.onIssue(this, free);
+        if (icache != null) {
+            decodeQueue.remove(); // already taken from the queue or trace by fetch
+        } else if (traceMode) {
+            source.advance();
+            traceConsumed++;
+        } else {
+            instrQueue.remove(0);
+            pending.queueChanged = true;
+        }
+        counters.issued++;
         issuedCount++; // Track that we issued an instruction
+        pc = (int) Math.min(issuedCount, Integer.MAX_VALUE); // only trace mode can outrun an int
+        return true;
+    }
+
+    // Fetch up to cfg.fetchWidth instructions from one I-cache block into the decode queue.
+    // A miss stalls fetch for the miss penalty. Traces carry no instruction addresses, so in trace
+    // mode only fetch width and decode queue capacity apply.
+    private void fetchStep() {
+        if (loopBufferFetch()) return;
+        if (fetchStall > 0) {
+            fetchStall--;
+            counters.stallICacheMiss++;
+            return;
+        }
+        int block = Integer.MIN_VALUE;
+        for (int k = 0; k < cfg.fetchWidth; k++) {
+            Instruction ins = fetchHead();
+            if (ins == null) return;
+            if (decodeQueue.size() >= cfg.decodeQueueSize) {
+                counters.stallDecodeQueueFull++;
+                return;
+            }
+            if (!traceMode) {
+                // instrQueue starts at static index issuedCount + decodeQueue.size()
+                int address = ((int) issuedCount + decodeQueue.size()) * InstructionCache.INSTRUCTION_BYTES;
+                int b = icache.blockOf(address);
+                if (b != block) {
+                    if (k > 0) return; // next block next cycle
+                    block = b;
+                    if (icache.access(address)) {
+                        counters.icacheHits++;
+                    } else {
+                        counters.icacheMisses++;
+                        counters.stallICacheMiss++;
+                        fetchStall = cfg.icacheMissPenalty - 1;
+                        history.add("I-cache MISS at PC " + (address / InstructionCache.INSTRUCTION_BYTES));
+                        return;
+                    }
+                }
+            }
+            decodeQueue.add(ins);
+            if (traceMode) {
+                source.advance();
+                traceConsumed++;
+            } else {
+                instrQueue.remove(0);
+                pending.queueChanged = true;
+            }
+            counters.fetched++;
+        }
+    }
+
+    // Replay from the loop buffer: up to cfg.loopBufferWidth (default fetchWidth) instructions per
+    // cycle up to the end of the loop, with no I-cache access, block limit or miss stall.
+    // Returns false when the next instruction to fetch is outside the buffer.
+    private boolean loopBufferFetch() {
+        if (loopStart < 0 || traceMode) return false;
+        int index = (int) issuedCount + decodeQueue.size();
+        if (index < loopStart || index > loopEnd) return false;
+        fetchStall = 0;
+        int width = cfg.loopBufferWidth > 0 ? cfg.loopBufferWidth : cfg.fetchWidth;
+        for (int k = 0; k < width && index <= loopEnd && !instrQueue.isEmpty(); k++, index++) {
+            if (decodeQueue.size() >= cfg.decodeQueueSize) {
+                counters.stallDecodeQueueFull++;
+                break;
+            }
+            decodeQueue.add(instrQueue.remove(0));
+            counters.fetched++;
+            counters.loopBufferFetched++;
+        }
+        pending.queueChanged = true;
+        return true;
+    }
+
+    // Step without issuing until every station is free; returns the cycles spent
+    public long drainPipeline() {
+        long start = cycle;
+        issueSuppressed = true;
+        try {
+            while (countBusy(allStations) > 0) step();
+        } finally {
+            issueSuppressed = false;
+        }
+        return cycle - start;
+    }
+
+    // Functional fast-forward: execute up to n instructions' semantics against the registers and
+    // memory with no stations or timing. Cache lookups still happen (and fill lines on load misses,
+    // as in detailed mode), so the cache is warm when detailed simulation resumes. Drains the
+    // pipeline first; returns the number of instructions executed.
+    public long fastForward(long n) {
+        if (!smtThreads.isEmpty()) throw new IllegalStateException("Fast-forward supports a single hardware thread");
+        // Skipped instructions never reach onIssue/onWriteback, so an observer would lose sync
+        if (observer != null) throw new IllegalStateException("Fast-forward cannot run with an observer attached");
+        drainPipeline();
+        long done = 0;
+        int next = (int) issuedCount; // static mode: index of the next instruction in originalProgram
+        // Fetched trace instructions are already off the trace; static mode refetches from next
+        ArrayDeque<Instruction> fetched = new ArrayDeque<>(traceMode ? decodeQueue : Collections.emptyList());
+        decodeQueue.clear();
+        fetchStall = 0;
+        while (done < n) {
+            Instruction ins;
+            if (traceMode && !fetched.isEmpty()) {
+                executeFunctional(fetched.remove(), next);
+                done++;
+                continue;
+            }
+            if (traceMode) {
+                ins = source == null ? null : source.peek();
+            } else {
+                ins = next >= 0 && next < originalProgram.size() ? originalProgram.get(next) : null;
+            }
+            if (ins == null) break;
+            int after = executeFunctional(ins, next);
+            if (traceMode) {
+                source.advance();
+                traceConsumed++;
+            } else {
+                next = after;
+            }
+            done++;
+        }
+        if (!traceMode) {
+            // Resynchronize the issue queue with the functional PC
+            instrQueue.reload(originalProgram, next);
+            issuedCount = next;
+            pc = next;
+            pending.queueChanged = true;
+        }
+        counters.fastForwarded += done;
+        history.add("Fast-forwarded " + done + " instructions");
+        return done;
+    }
+
+    // Execute one instruction functionally; returns the index of the next static instruction
+    // (a taken branch goes to index + 1 + offset, matching how labels are resolved)
+    private int executeFunctional(Instruction ins, int index) {
+        long v1 = ins.src1 == null ? 0 : registers.getBits(ins.src1);
+        long v2 = ins.src2 == null ? 0 : registers.getBits(ins.src2);
+        if (isLoadOrStore(ins)) {
+            int offset = ins.immediate == null ? 0 : ins.immediate;
+            int address = ins.traceAddress != null ? ins.traceAddress : (int) v1 + offset;
+            int size = accessSize(ins);
+            if (tlb != null) tlb.access(address);
+            if (cache.access(address, size) > 0 && isLoad(ins)) cache.loadBlockIntoCache(address, size);
+            if (isLoad(ins)) {
+                if (ins.dest != null) registers.setBits(ins.dest, load(ins, address));
+            } else {
+                store(ins, address, v2);
+            }
+        } else if (ins.type == InstructionType.BEQ || ins.type == InstructionType.BNE) {
+            boolean taken = ins.traceTaken != null ? ins.traceTaken
+                : (ins.type == InstructionType.BEQ) ? (v1 == v2) : (v1 != v2);
+            if (taken) return index + 1 + (ins.immediate == null ? 0 : ins.immediate);
+        } else if (ins.dest != null) {
+            registers.setBits(ins.dest, compute(ins, v1, v2));
+        }
+        return index + 1;
     }
 
     private List<ReservationStation> selectPool(Instruction ins) {
+        List<ReservationStation> pool = poolOf(ins);
+        return pool == loadBuffers || windowStations.isEmpty() ? pool : windowStations;
+    }
+
+    // Station pool of an instruction without an issue window; with one it names the functional unit class
+    private List<ReservationStation> poolOf(Instruction ins) {
         switch (ins.type) {
             case ADD: case SUB: case ADD_D: case SUB_D: case ADD_S: case SUB_S: return addStations;
             case MUL: case DIV: case MUL_D: case DIV_D: case MUL_S: case DIV_S: return mulStations;
@@ -157,7 +675,8 @@ public class TomasuloEngine {
         }
     }
 
-    private int estimateLatency(Instruction ins) {
+    // Fixed execution latency of an instruction (also the edge weights of DataflowAnalyzer)
+    static int estimateLatency(SimulatorConfig cfg, Instruction ins) {
         switch (ins.type) {
             case MUL: case MUL_D: case MUL_S: return cfg.mulLatency;
             case DIV: case DIV_D: case DIV_S: return cfg.divLatency;
@@ -169,10 +688,151 @@ public class TomasuloEngine {
         }
     }
 
+    // Window mode: index into the per-cycle free unit counts of executeStep()
+    private int unitClass(Instruction ins) {
+        List<ReservationStation> pool = poolOf(ins);
+        return pool == mulStations ? 1 : pool == intStations ? 2 : 0;
+    }
+
+    // Window mode: busy stations in the order the select logic considers them (cfg.selectPolicy)
+    private List<ReservationStation> selectOrder() {
+        List<ReservationStation> order = new ArrayList<>(allStations.size());
+        for (ReservationStation rs : allStations) if (rs.busy) order.add(rs);
+        switch (cfg.selectPolicy) {
+            case RANDOM:
+                for (int i = order.size() - 1; i > 0; i--) Collections.swap(order, i, nextRandom(i + 1));
+                break;
+            case CRITICAL_PATH:
+                Map<ReservationStation, Integer> height = chainHeights(order);
+                order.sort(Comparator.comparingInt((ReservationStation rs) -> -height.get(rs))
+                        .thenComparingLong(rs -> rs.seq));
+                break;
+            default:
+                order.sort(Comparator.comparingLong(rs -> rs.seq));
+                break;
+        }
+        return order;
+    }
+
+    // Latency of the longest dependence chain from each station through the stations waiting on it
+    private Map<ReservationStation, Integer> chainHeights(List<ReservationStation> busy) {
+        Map<String, List<ReservationStation>> consumers = new HashMap<>();
+        for (ReservationStation rs : busy) {
+            if (rs.qj != null) consumers.computeIfAbsent(rs.qj, k -> new ArrayList<>()).add(rs);
+            if (rs.qk != null && !rs.qk.equals(rs.qj)) consumers.computeIfAbsent(rs.qk, k -> new ArrayList<>()).add(rs);
+        }
+        Map<ReservationStation, Integer> height = new IdentityHashMap<>();
+        for (ReservationStation rs : busy) chainHeight(rs, consumers, height);
+        return height;
+    }
+
+    private int chainHeight(ReservationStation rs, Map<String, List<ReservationStation>> consumers,
+                            Map<ReservationStation, Integer> height) {
+        Integer known = height.get(rs);
+        if (known != null) return known;
+        int longest = 0;
+        for (ReservationStation c : consumers.getOrDefault(resultTag(rs), Collections.emptyList())) {
+            longest = Math.max(longest, chainHeight(c, consumers, height));
+        }
+        int h = estimateLatency(cfg, rs.inst) + longest;
+        height.put(rs, h);
+        return h;
+    }
+
+    // Claim a functional unit for a station whose operands are ready; false leaves it waiting.
+    // Modelled multipliers and dividers are tracked across cycles; with an issue window any other
+    // instruction takes one of this cycle's free units of its class (freeUnits is null without a window)
+    private boolean acquireUnit(ReservationStation rs, int[] freeUnits) {
+        boolean divide = isDivide(rs.inst);
+        if (divide) rs.remaining = divideLatency(rs);
+        if (divide && divFree.length > 0) {
+            int u = firstFree(divFree);
+            if (u < 0) {
+                counters.stallDivider++;
+                return false;
+            }
+            divFree[u] = cycle + rs.remaining; // not pipelined: busy until the divide finishes
+        } else if (!divide && unitClass(rs.inst) == 1 && mulFree.length > 0) {
+            int u = firstFree(mulFree);
+            if (u < 0) {
+                counters.stallMultiplier++;
+                return false;
+            }
+            mulFree[u] = cycle + cfg.mulInterval;
+        } else if (freeUnits != null) {
+            int unit = unitClass(rs.inst);
+            if (freeUnits[unit] == 0) {
+                counters.selectConflicts++; // every unit of its class started an instruction this cycle
+                return false;
+            }
+            freeUnits[unit]--;
+        }
+        if (divide) {
+            counters.divides++;
+            counters.divideCycles += rs.remaining;
+        }
+        return true;
+    }
+
+    private int firstFree(long[] unitFree) {
+        for (int u = 0; u < unitFree.length; u++) if (unitFree[u] <= cycle) return u;
+        return -1;
+    }
+
+    private static boolean isDivide(Instruction ins) {
+        return ins.type == InstructionType.DIV || ins.type == InstructionType.DIV_D || ins.type == InstructionType.DIV_S;
+    }
+
+    // Divide latency once the operands are known. The early-out divider (cfg.divEarlyOut) retires
+    // quotient bits at a fixed rate but skips leading zero bits and stops when the partial remainder
+    // is zero, so it needs cfg.divLatency only for a quotient with every bit significant
+    private int divideLatency(ReservationStation rs) {
+        if (!cfg.divEarlyOut) return cfg.divLatency;
+        long v1 = rs.vj == null ? 0 : rs.vj, v2 = rs.vk == null ? 0 : rs.vk;
+        int bits, width;
+        if (rs.inst.type == InstructionType.DIV) {
+            long a = Math.abs((long) (int) v1), b = Math.abs((long) (int) v2);
+            width = 32;
+            bits = b == 0 ? 0 : Math.max(0, (64 - Long.numberOfLeadingZeros(a)) - (64 - Long.numberOfLeadingZeros(b)) + 1);
+        } else if (rs.inst.type == InstructionType.DIV_S) {
+            float q = (float) Double.longBitsToDouble(v1) / (float) Double.longBitsToDouble(v2);
+            width = 24;
+            int m = Float.floatToRawIntBits(q) & 0x7FFFFF;
+            if (q == 0 || Float.isNaN(q) || Float.isInfinite(q)) bits = 0;
+            else if (Math.abs(q) < Float.MIN_NORMAL) bits = width;
+            else bits = width - Integer.numberOfTrailingZeros(m | 1 << 23);
+        } else {
+            double q = Double.longBitsToDouble(v1) / Double.longBitsToDouble(v2);
+            width = 53;
+            long m = Double.doubleToRawLongBits(q) & 0xFFFFFFFFFFFFFL;
+            if (q == 0 || Double.isNaN(q) || Double.isInfinite(q)) bits = 0;
+            else if (Math.abs(q) < Double.MIN_NORMAL) bits = width;
+            else bits = width - Long.numberOfTrailingZeros(m | 1L << 52);
+        }
+        return Math.max(1, (cfg.divLatency * bits + width - 1) / width);
+    }
+
+    private int nextRandom(int bound) {
+        selectRng ^= selectRng << 13;
+        selectRng ^= selectRng >>> 7;
+        selectRng ^= selectRng << 17;
+        return (int) Math.floorMod(selectRng, (long) bound);
+    }
+
+    // Tag consumers wait on for this station's result
+    private static String resultTag(ReservationStation rs) {
+        return rs.physDest >= 0 ? PhysicalRegisterFile.name(rs.physDest) : rs.name;
+    }
+
     private void executeStep() {
-        // For each station: compute address if needed, start execution when ready, decrement cycles
-        List<ReservationStation> all = new ArrayList<>();
-        all.addAll(addStations); all.addAll(mulStations); all.addAll(intStations); all.addAll(loadBuffers);
+        // For each station: compute address if needed, start execution when ready, decrement cycles.
+        // With an issue window the stations come in select order and compete for the functional units
+        boolean window = !windowStations.isEmpty();
+        List<ReservationStation> all = window ? selectOrder() : allStations;
+        int[] freeUnits = window ? new int[] {cfg.addUnits, cfg.mulUnits, cfg.intUnits} : null;
+        boolean lsuActive = false;
+        boolean dram = cache.getDram() != null;
+        boolean accessStarted = false; // a load/store accessed the cache this cycle
         
         for (ReservationStation rs : all) {
             if (!rs.busy) continue;
@@ -181,11 +841,13 @@ public class TomasuloEngine {
             if (rs.justIssued) continue;
             
             // For load/store: check if another load/store is already executing
-            // Only ONE load/store can execute at a time (single load/store unit)
+            // Only ONE load/store can execute at a time (single load/store unit). With DRAM the unit
+            // takes one cache access per cycle and is only held by a page walk or a load/store in its
+            // execution latency: misses waiting for their block do not hold it, so several are outstanding
             if (isLoadOrStore(rs.inst) && !rs.executing) {
-                boolean anotherLoadStoreExecuting = false;
+                boolean anotherLoadStoreExecuting = dram && accessStarted;
                 for (ReservationStation other : loadBuffers) {
-                    if (other != rs && other.busy && other.executing) {
+                    if (other != rs && other.busy && (other.tlbWalk > 0 || (dram ? holdsLoadStoreUnit(other) : other.executing))) {
                         anotherLoadStoreExecuting = true;
                         break;
                     }
@@ -193,44 +855,59 @@ public class TomasuloEngine {
                 if (anotherLoadStoreExecuting) continue; // Wait for other load/store to finish
             }
             
+            // Page walk after a data TLB miss; the cache access waits until it is done
+            if (rs.tlbWalk > 0) {
+                missActive = true;
+                if (--rs.tlbWalk == 0) history.add(rs.name + " page walk done for addr " + rs.address);
+            }
+
             // For load/store: compute effective address when base register ready
             if (!rs.addressReady && isLoadOrStore(rs.inst)) {
                 if (rs.qj == null) { // base register ready
-                    int base = (rs.vj == null) ? 0 : rs.vj;
+                    int base = (rs.vj == null) ? 0 : rs.vj.intValue();
                     int offset = (rs.inst.immediate == null) ? 0 : rs.inst.immediate;
-                    rs.address = base + offset;
+                    // A trace supplies the recorded address; the base register still orders the access
+                    rs.address = rs.inst.traceAddress != null ? rs.inst.traceAddress : base + offset;
                     rs.addressReady = true;
                     history.add(rs.name + " computed address: " + rs.address);
-                    
-                    // For loads, immediately check cache to detect miss/hit and start miss penalty countdown
-                    if (isLoad(rs.inst)) {
-                        int missPenalty = cache.access(rs.address, 4);
-                        // missPenalty = 0 on hit, or 10 on miss
-                        
-                        if (missPenalty > 0) {
-                            // Cache miss - count down miss penalty, then execute load
-                            rs.cacheMissPenalty = missPenalty;
-                            rs.remaining = cfg.loadLatency; // Load execution (includes hit latency) comes after miss penalty
-                            rs.cacheBlockLoaded = false;
-                            rs.executing = true; // Mark as executing so miss penalty countdown starts
-                            history.add(rs.name + " cache MISS at addr " + rs.address + 
-                                      " (miss penalty=" + missPenalty + " cycles, then load latency=" + cfg.loadLatency + " cycles)");
-                        } else {
-                            // Cache hit - no miss penalty, just execute load
-                            rs.cacheMissPenalty = 0;
-                            rs.remaining = cfg.loadLatency; // Load execution includes hit latency
-                            rs.cacheBlockLoaded = true; // Already in cache
-                            rs.executing = true;
-                            history.add(rs.name + " cache HIT at addr " + rs.address + 
-                                      " (load latency=" + cfg.loadLatency + " cycles)");
-                        }
+                    rs.tlbWalk = translate(rs.address);
+                    if (rs.tlbWalk > 0) {
+                        history.add(rs.name + " TLB MISS at addr " + rs.address + " (page walk=" + rs.tlbWalk + " cycles)");
                     }
                 }
             }
+
+            // For loads, check cache once the address is translated to detect miss/hit and start miss penalty countdown
+            if (isLoad(rs.inst) && rs.addressReady && !rs.executing && rs.tlbWalk == 0) {
+                accessStarted = true;
+                int missPenalty = cache.access(rs.address, accessSize(rs.inst));
+                cache.setWaiter(rs); // multicore: bus delays extend rs.cacheMissPenalty
+                // missPenalty = 0 on hit, or 10 on miss
+                
+                if (missPenalty > 0) {
+                    // Cache miss - count down miss penalty, then execute load
+                    rs.cacheMissPenalty = missPenalty;
+                    rs.remaining = cfg.loadLatency; // Load execution (includes hit latency) comes after miss penalty
+                    rs.cacheBlockLoaded = false;
+                    rs.executing = true; // Mark as executing so miss penalty countdown starts
+                    history.add(rs.name + " cache MISS at addr " + rs.address + 
+                              " (" + penaltyText(missPenalty) + ", then load latency=" + cfg.loadLatency + " cycles)");
+                } else {
+                    // Cache hit - no miss penalty, just execute load
+                    rs.cacheMissPenalty = 0;
+                    rs.remaining = cfg.loadLatency; // Load execution includes hit latency
+                    rs.cacheBlockLoaded = true; // Already in cache
+                    rs.executing = true;
+                    history.add(rs.name + " cache HIT at addr " + rs.address + 
+                              " (load latency=" + cfg.loadLatency + " cycles)");
+                }
+            }
             
             // For stores: check cache when both address AND store value are ready
-            if (isStore(rs.inst) && rs.addressReady && !rs.executing && rs.qk == null) {
-                int missPenalty = cache.access(rs.address, 4);
+            if (isStore(rs.inst) && rs.addressReady && !rs.executing && rs.qk == null && rs.tlbWalk == 0) {
+                accessStarted = true;
+                int missPenalty = cache.access(rs.address, accessSize(rs.inst), true);
+                cache.setWaiter(rs);
                 // missPenalty = 0 on hit, or 10 on miss
                 
                 if (missPenalty > 0) {
@@ -240,7 +917,7 @@ public class TomasuloEngine {
                     rs.cacheBlockLoaded = false;
                     rs.executing = true; // Mark as executing so miss penalty countdown starts
                     history.add(rs.name + " cache MISS at addr " + rs.address + 
-                              " (miss penalty=" + missPenalty + " cycles, then store latency=" + cfg.storeLatency + " cycles)");
+                              " (" + penaltyText(missPenalty) + ", then store latency=" + cfg.storeLatency + " cycles)");
                 } else {
                     // Cache hit - no miss penalty, just execute store
                     rs.cacheMissPenalty = 0;
@@ -255,7 +932,19 @@ public class TomasuloEngine {
             // For load/store: check if another load/store is already executing (in actual execution phase)
             // Only ONE load/store can be in actual execution at a time (single load/store unit)
             boolean canExecuteLoadStore = true;
-            if (isLoadOrStore(rs.inst) && rs.cacheBlockLoaded) {
+            if (dram) {
+                // Several loads/stores may have their data: one that has started keeps the unit,
+                // otherwise the first ready one this cycle takes it
+                canExecuteLoadStore = !lsuActive;
+                if (isLoadOrStore(rs.inst) && canExecuteLoadStore) {
+                    for (ReservationStation other : loadBuffers) {
+                        if (other != rs && other.busy && holdsLoadStoreUnit(other)) {
+                            canExecuteLoadStore = false;
+                            break;
+                        }
+                    }
+                }
+            } else if (isLoadOrStore(rs.inst) && rs.cacheBlockLoaded) {
                 for (ReservationStation other : loadBuffers) {
                     if (other != rs && other.busy && other.executing && other.cacheBlockLoaded && other.remaining > 0) {
                         canExecuteLoadStore = false;
@@ -276,6 +965,7 @@ public class TomasuloEngine {
                 } else {
                     canStart = rs.qj == null && rs.qk == null; // regular ALU
                 }
+                if (canStart) canStart = acquireUnit(rs, freeUnits);
                 
                 if (canStart) {
                     rs.executing = true;
@@ -283,16 +973,19 @@ public class TomasuloEngine {
                 }
             }
             
+            if (rs.executing) trace.recordExecStart(rs.traceId, cycle);
+            
             // Handle cache access latency countdown (hit latency or miss penalty+hit latency)
             // This happens BEFORE load execution phase, and doesn't require load/store unit
             if (rs.executing && rs.cacheMissPenalty > 0) {
+                missActive = true;
                 rs.cacheMissPenalty--;
                 if (rs.cacheMissPenalty == 0) {
                     // Cache access complete
                     if (isLoad(rs.inst)) {
                         if (!rs.cacheBlockLoaded) {
                             // Was a miss - now bring block into cache
-                            cache.loadBlockIntoCache(rs.address);
+                            cache.loadBlockIntoCache(rs.address, accessSize(rs.inst));
                             rs.cacheBlockLoaded = true;
                             history.add(rs.name + " cache block loaded for addr " + rs.address);
                         } else {
@@ -309,87 +1002,212 @@ public class TomasuloEngine {
                 if (isLoad(rs.inst)) {
                     if (rs.cacheMissPenalty == 0 && canExecuteLoadStore) {
                         rs.remaining--;
+                        lsuActive = true;
                     }
                 } else if (isStore(rs.inst)) {
                     // Stores: only decrement if cache access is done (cacheMissPenalty == 0) AND no other load/store is executing
                     if (rs.cacheMissPenalty == 0 && canExecuteLoadStore) {
                         rs.remaining--;
+                        lsuActive = true;
                     }
                 } else {
                     // Non-load/store instructions execute normally
                     rs.remaining--;
+                    execActive = true;
                 }
                 if (rs.remaining == 0) {
                     rs.writebackPending = true;
+                    trace.recordExecEnd(rs.traceId, cycle);
                     history.add(rs.name + " finished execution of " + rs.inst);
                 }
             }
         }
+        if (lsuActive) {
+            counters.loadStoreBusyCycles++;
+            execActive = true;
+        }
     }
     
-    private boolean isLoadOrStore(Instruction ins) {
+    // Load/store part way through its execution latency on the load/store unit
+    private boolean holdsLoadStoreUnit(ReservationStation rs) {
+        int latency = isLoad(rs.inst) ? cfg.loadLatency : cfg.storeLatency;
+        return rs.executing && rs.cacheMissPenalty == 0 && rs.remaining > 0 && rs.remaining < latency;
+    }
+
+    // Data TLB lookup for a timed access: 0 on a hit, otherwise the cycles of the page walk
+    private int translate(int address) {
+        if (tlb == null) return 0;
+        if (tlb.access(address)) {
+            counters.tlbHits++;
+            return 0;
+        }
+        counters.tlbMisses++;
+        int walk = 0;
+        for (int level = 0; level < cfg.pageWalkLevels; level++) {
+            if (!cfg.pageWalkCached) {
+                walk += cfg.pageWalkLatency;
+            } else if (cache.walkAccess(tlb.pteAddress(address, level, cfg.pageWalkLevels))) {
+                counters.pageWalkCacheHits++;
+                walk += cfg.cacheHitLatency;
+            } else {
+                walk += cfg.cacheMissPenalty;
+            }
+        }
+        walk = Math.max(1, walk);
+        counters.pageWalkCycles += walk;
+        return walk;
+    }
+
+    private static String penaltyText(int missPenalty) {
+        return missPenalty == DramController.PENDING ? "waiting for DRAM" : "miss penalty=" + missPenalty + " cycles";
+    }
+
+    static boolean isLoadOrStore(Instruction ins) {
         return ins.type == InstructionType.LD || ins.type == InstructionType.LW ||
                ins.type == InstructionType.L_D || ins.type == InstructionType.L_S ||
                ins.type == InstructionType.SD || ins.type == InstructionType.SW ||
                ins.type == InstructionType.S_S || ins.type == InstructionType.S_D || ins.type == InstructionType.S_W;
     }
     
-    private boolean isLoad(Instruction ins) {
+    // Bytes moved by a load or store: 8 for the double-precision forms, 4 otherwise
+    static int accessSize(Instruction ins) {
+        return ins.type == InstructionType.L_D || ins.type == InstructionType.S_D ? 8 : 4;
+    }
+
+    // Loaded value as the raw bits written to the destination (single precision is widened to double)
+    private long load(Instruction ins, int address) {
+        switch (ins.type) {
+            case L_D: return cache.readLong(address);
+            case L_S: return Double.doubleToRawLongBits(Float.intBitsToFloat(cache.readWord(address)));
+            default: return cache.readWord(address);
+        }
+    }
+
+    private void store(Instruction ins, int address, long value) {
+        switch (ins.type) {
+            case S_D: cache.writeLong(address, value); break;
+            case S_S: cache.writeWord(address, Float.floatToRawIntBits((float) Double.longBitsToDouble(value))); break;
+            default: cache.writeWord(address, (int) value); break;
+        }
+    }
+
+    static boolean isLoad(Instruction ins) {
         return ins.type == InstructionType.LD || ins.type == InstructionType.LW ||
                ins.type == InstructionType.L_D || ins.type == InstructionType.L_S;
     }
     
-    private boolean isStore(Instruction ins) {
+    static boolean isStore(Instruction ins) {
         return ins.type == InstructionType.SD || ins.type == InstructionType.SW ||
                ins.type == InstructionType.S_S || ins.type == InstructionType.S_D || ins.type == InstructionType.S_W;
     }
 
+    static boolean isBranch(Instruction ins) {
+        return ins.type == InstructionType.BEQ || ins.type == InstructionType.BNE;
+    }
+
     private void writebackStep() {
-        // Publish at most one result per cycle. 
+        // Publish at most cfg.cdbWidth results per cycle (one by default).
         // ARBITRATION POLICY: First-come-first-served based on station list order
         // (Add0, Add1, Add2, Mul0, Mul1, Int0, Int1, Load0, Load1, Load2)
-        List<ReservationStation> all = new ArrayList<>();
-        all.addAll(addStations); all.addAll(mulStations); all.addAll(intStations); all.addAll(loadBuffers);
+        List<ReservationStation> all = allStations;
         
-        ReservationStation ready = null;
+        int contenders = 0;
         for (ReservationStation rs : all) {
-            if (rs.busy && rs.writebackPending) {
-                ready = rs;
-                break; // First one wins the bus
+            if (rs.busy && rs.writebackPending) contenders++;
+        }
+        int written = 0, regWrites = 0;
+        for (ReservationStation rs : all) {
+            if (written == cfg.cdbWidth) break;
+            if (!rs.busy || !rs.writebackPending) continue;
+            if (writesRegister(rs.inst)) {
+                // Results also need a register file write port
+                if (cfg.regWritePorts > 0 && regWrites == cfg.regWritePorts) {
+                    counters.stallRegWritePorts++;
+                    continue;
+                }
+                regWrites++;
             }
+            writeback(rs);
+            written++;
+        }
+        if (contenders > written && contenders > 1) {
+            counters.cdbContentionCycles++;
+            counters.cdbDeferredResults += contenders - written;
         }
-        if (ready == null) return;
+    }
+
+    private boolean writesRegister(Instruction ins) {
+        return ins.dest != null && !isStore(ins)
+            && ins.type != InstructionType.BEQ && ins.type != InstructionType.BNE;
+    }
+
+    private void writeback(ReservationStation ready) {
+        List<ReservationStation> all = allStations;
+        wroteBack = true;
+        counters.completed++;
+        counters.threadCompleted[ready.thread]++;
+        // Results of other SMT threads go to their own registers and are not observed
+        RegisterFile regs = registersOf(ready.thread);
+        EngineObserver observer = ready.thread == 0 ? this.observer : null;
 
         // Handle different instruction types
         if (isStore(ready.inst)) {
             // Store: write value to memory/cache
-            int storeValue = (ready.vk == null) ? 0 : ready.vk;
-            cache.writeWord(ready.address, storeValue);
-            history.add(ready.name + " writeback: Store value=" + storeValue + 
+            long storeValue = (ready.vk == null) ? 0 : ready.vk;
+            store(ready.inst, ready.address, storeValue);
+            if (observer != null) observer.onWriteback(this, ready, storeValue);
+            history.add(ready.name + " writeback: Store value=" + RegisterFile.formatBits(ready.inst.src2, storeValue) + 
                        " to addr=" + ready.address);
         } else if (ready.inst.type == InstructionType.BEQ || ready.inst.type == InstructionType.BNE) {
             // Branch: compare operands and update PC if needed
-            int val1 = (ready.vj == null) ? 0 : ready.vj;
-            int val2 = (ready.vk == null) ? 0 : ready.vk;
+            long val1 = (ready.vj == null) ? 0 : ready.vj;
+            long val2 = (ready.vk == null) ? 0 : ready.vk;
             boolean condition = (ready.inst.type == InstructionType.BEQ) ? (val1 == val2) : (val1 != val2);
+            if (physRegFile != null) physRegFile.releaseSnapshot(ready.seq);
+            if (observer != null) {
+                boolean taken = traceMode && ready.inst.traceTaken != null ? ready.inst.traceTaken : condition;
+                observer.onWriteback(this, ready, taken ? 1 : 0);
+            }
             
-            if (condition) {
+            if (traceMode) {
+                // The trace already follows the executed path; only report the recorded outcome
+                boolean taken = ready.inst.traceTaken != null ? ready.inst.traceTaken : condition;
+                history.add(ready.name + " writeback: Branch " + (taken ? "TAKEN" : "NOT TAKEN") + " (from trace)");
+            } else if (condition) {
                 // Branch taken - jump to target address
                 int offset = (ready.inst.immediate == null) ? 0 : ready.inst.immediate;
-                int targetPC = issuedCount + offset; // Calculate absolute target PC
+                int targetPC = (ready.thread == 0 ? (int) issuedCount : smtThreads.get(ready.thread - 1).issuedCount) + offset; // Calculate absolute target PC
                 
                 history.add(ready.name + " writeback: Branch TAKEN (offset=" + offset + 
                            "), val1=" + val1 + " val2=" + val2 + ", jumping to instruction " + targetPC);
                 
                 // Clear instruction queue and reload from target PC
-                if (targetPC >= 0 && targetPC < originalProgram.size()) {
-                    instrQueue.clear();
-                    // Add instructions from target PC onwards
-                    for (int i = targetPC; i < originalProgram.size(); i++) {
-                        instrQueue.add(originalProgram.get(i));
+                if (ready.thread > 0) {
+                    if (smtThreads.get(ready.thread - 1).redirect(targetPC)) {
+                        history.add("Reloaded thread " + ready.thread + " instruction queue from PC=" + targetPC);
+                    } else {
+                        history.add("Branch target out of bounds: " + targetPC);
                     }
+                } else if (targetPC >= 0 && targetPC < originalProgram.size()) {
+                    instrQueue.reload(originalProgram, targetPC); // instructions from target PC onwards
                     issuedCount = targetPC; // Update issued count to target PC
+                    pc = targetPC;
+                    pending.queueChanged = true;
                     history.add("Reloaded instruction queue from PC=" + targetPC);
+                    if (icache != null) {
+                        // Fetched fall-through instructions are discarded, as is a pending I-cache miss
+                        counters.fetchFlushed += decodeQueue.size();
+                        decodeQueue.clear();
+                        fetchStall = 0;
+                        // A short backward loop (body = the -offset instructions before issuedCount) is captured
+                        if (cfg.loopBufferSize > 0 && offset < 0 && -offset <= cfg.loopBufferSize
+                                && (loopStart != targetPC || loopEnd != targetPC - offset - 1)) {
+                            loopStart = targetPC;
+                            loopEnd = targetPC - offset - 1;
+                            counters.loopBufferCaptures++;
+                            history.add("Loop buffer captured PC " + loopStart + "-" + loopEnd);
+                        }
+                    }
                 } else {
                     history.add("Branch target out of bounds: " + targetPC);
                 }
@@ -398,34 +1216,47 @@ public class TomasuloEngine {
             }
         } else {
             // Regular ALU or Load: compute result and writeback
-            int value;
+            long value;
+            String shown;
             if (isLoad(ready.inst)) {
                 // Load: read from memory (cache block already loaded during execution)
-                value = cache.readWord(ready.address);
-                history.add(ready.name + " writeback: Load value=" + value + " from addr=" + ready.address);
+                value = load(ready.inst, ready.address);
+                shown = RegisterFile.formatBits(ready.inst.dest, value);
+                history.add(ready.name + " writeback: Load value=" + shown + " from addr=" + ready.address);
             } else {
                 // ALU operation: compute result
                 value = computeResult(ready);
-                history.add(ready.name + " writeback: ALU result=" + value);
+                shown = RegisterFile.formatBits(ready.inst.dest, value);
+                history.add(ready.name + " writeback: ALU result=" + shown);
             }
             
+            // Results are tagged with the station, or with the physical register when renaming to one
+            String tag = resultTag(ready);
+
             // Write to destination register
             if (ready.inst.dest != null) {
-                registers.set(ready.inst.dest, value);
-                registers.clearTag(ready.inst.dest, ready.name);
-                history.add(ready.name + " wrote " + ready.inst.dest + "=" + value);
+                if (physRegFile == null || ready.physDest < 0 || physRegFile.lookup(ready.inst.dest) == ready.physDest) {
+                    regs.setBits(ready.inst.dest, value);
+                    history.add(ready.name + " wrote " + ready.inst.dest + "=" + shown);
+                } else {
+                    // A younger writer has been renamed; only the physical register receives the value
+                    history.add(ready.name + " wrote " + tag + "=" + shown + " (" + ready.inst.dest + " renamed since)");
+                }
+                regs.clearTag(ready.inst.dest, tag);
             }
+            if (physRegFile != null && ready.physDest >= 0) physRegFile.complete(ready.physDest, ready.prevPhys);
+            if (observer != null) observer.onWriteback(this, ready, value);
             
             // Broadcast value to waiting stations
             for (ReservationStation rs : all) {
                 if (!rs.busy) continue;
-                if (ready.name.equals(rs.qj)) { 
+                if (tag.equals(rs.qj)) { 
                     rs.vj = value; 
                     rs.qj = null;
                     // Mark that this station just received a value - can't start execution this cycle
                     rs.justIssued = true;
                 }
-                if (ready.name.equals(rs.qk)) { 
+                if (tag.equals(rs.qk)) { 
                     rs.vk = value; 
                     rs.qk = null;
                     // Mark that this station just received a value - can't start execution this cycle
@@ -435,26 +1266,47 @@ public class TomasuloEngine {
         }
 
         // Clear station
+        trace.recordWriteback(ready.traceId, cycle);
         ready.clear();
     }
     
-    private int computeResult(ReservationStation rs) {
+    private long computeResult(ReservationStation rs) {
         // Simplified result computation
-        int v1 = (rs.vj == null) ? 0 : rs.vj;
-        int v2 = (rs.vk == null) ? 0 : rs.vk;
-        int imm = (rs.inst.immediate == null) ? 0 : rs.inst.immediate;
+        long v1 = (rs.vj == null) ? 0 : rs.vj;
+        long v2 = (rs.vk == null) ? 0 : rs.vk;
+        return compute(rs.inst, v1, v2);
+    }
+
+    // Shared by the timing model and functional fast-forward. Operands and result are raw register
+    // bits: 32-bit integers for integer ops, IEEE doubles for _D and _S (rounded to float for _S).
+    private long compute(Instruction ins, long v1, long v2) {
+        int imm = (ins.immediate == null) ? 0 : ins.immediate;
+        int a = (int) v1, b = (int) v2;
+        double x = Double.longBitsToDouble(v1), y = Double.longBitsToDouble(v2);
         
-        switch (rs.inst.type) {
-            case ADD: case ADD_D: case ADD_S: return v1 + v2;
-            case SUB: case SUB_D: case SUB_S: return v1 - v2;
-            case MUL: case MUL_D: case MUL_S: return v1 * v2;
-            case DIV: case DIV_D: case DIV_S: return (v2 != 0) ? v1 / v2 : 0;
-            case ADDI: case DADDI: return v1 + imm;
-            case SUBI: case DSUBI: return v1 - imm;
-            default: return cycle * 10 + Math.abs(Objects.hashCode(rs.inst.raw)) % 100;
+        switch (ins.type) {
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MUL: return a * b;
+            case DIV: return (b != 0) ? a / b : 0;
+            case ADD_D: return bits(x + y);
+            case SUB_D: return bits(x - y);
+            case MUL_D: return bits(x * y);
+            case DIV_D: return bits(x / y);
+            case ADD_S: return bits((float) x + (float) y);
+            case SUB_S: return bits((float) x - (float) y);
+            case MUL_S: return bits((float) x * (float) y);
+            case DIV_S: return bits((float) x / (float) y);
+            case ADDI: case DADDI: return a + imm;
+            case SUBI: case DSUBI: return a - imm;
+            default: return cycle * 10 + Math.abs(Objects.hashCode(ins.raw)) % 100;
         }
     }
 
+    private static long bits(double d) {
+        return Double.doubleToRawLongBits(d);
+    }
+
     public Map<String, Object> snapshot() {
         Map<String, Object> m = new HashMap<>();
         m.put("cycle", cycle);
@@ -463,7 +1315,8 @@ public class TomasuloEngine {
         m.put("mulStations", snapshotStations(mulStations));
         m.put("intStations", snapshotStations(intStations));
         m.put("loadBuffers", snapshotStations(loadBuffers));
-        m.put("registers", new HashMap<>(registers.regs));
+        m.put("windowStations", snapshotStations(windowStations));
+        m.put("registers", registers.toBits());
         m.put("registerTags", new HashMap<>(registers.tag));
         return m;
     }
@@ -0,0 +1,108 @@
+package com.tomasulo;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Streams a text dynamic instruction trace, one executed instruction per line:
+//
+//   L.D F0, 8(R1) ; ea=0x2008
+//   BNE R1, R2, LOOP ; taken=1
+//
+// "ea" is the effective address of a load/store and "taken" the branch outcome (1/0, T/N);
+// other keys are ignored. Blank lines and lines starting with # are skipped.
+// Only a fixed-size read buffer and one decoded lookahead instruction are held, so memory use does
+// not depend on trace length. Lines that fail to parse are skipped and counted.
+public class TraceReader implements InstructionSource {
+    public static final int BUFFER_CHARS = 1 << 16;
+
+    private final BufferedReader in;
+    private Instruction next = null;
+    private boolean eof = false;
+    private long line = 0;
+    private long consumed = 0;
+    private long badLines = 0;
+    private String firstError = null;
+
+    public TraceReader(Reader reader) {
+        this.in = new BufferedReader(reader, BUFFER_CHARS);
+    }
+
+    public static TraceReader open(Path path) throws IOException {
+        return new TraceReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Instruction peek() {
+        if (next == null && !eof) fill();
+        return next;
+    }
+
+    @Override
+    public void advance() {
+        if (peek() == null) return;
+        next = null;
+        consumed++;
+    }
+
+    @Override
+    public TraceReader skip(long n) {
+        InstructionSource.super.skip(n);
+        return this;
+    }
+
+    public long getConsumed() { return consumed; }
+    public long getBadLines() { return badLines; }
+    public String getFirstError() { return firstError; }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void fill() {
+        try {
+            String s;
+            while ((s = in.readLine()) != null) {
+                line++;
+                s = s.trim();
+                if (s.isEmpty() || s.startsWith("#")) continue;
+                try {
+                    next = parseLine(s);
+                    return;
+                } catch (IllegalArgumentException ex) {
+                    badLines++;
+                    if (firstError == null) firstError = "line " + line + ": " + ex.getMessage();
+                }
+            }
+            eof = true;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public static Instruction parseLine(String s) {
+        String[] fields = s.split(";");
+        Instruction ins = InstructionParser.parse(fields[0].trim(), null, 0);
+        Integer address = null;
+        Boolean taken = null;
+        for (int i = 1; i < fields.length; i++) {
+            String f = fields[i].trim();
+            int eq = f.indexOf('=');
+            if (eq < 0) continue;
+            String key = f.substring(0, eq).trim().toLowerCase();
+            String value = f.substring(eq + 1).trim();
+            try {
+                if (key.equals("ea")) {
+                    address = InstructionParser.parseInt(value);
+                } else if (key.equals("taken")) {
+                    taken = value.equals("1") || value.equalsIgnoreCase("T") || value.equalsIgnoreCase("true");
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Bad " + key + " value: " + value);
+            }
+        }
+        return address == null && taken == null ? ins : ins.withTrace(address, taken);
+    }
+}